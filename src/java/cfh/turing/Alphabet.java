@@ -0,0 +1,99 @@
+package cfh.turing;
+
+import java.text.ParseException;
+import java.util.Arrays;
+
+/**
+ * The symbols a program reads and writes, mapped to the codes {@code 0} for the blank and
+ * {@code 1..} for the declared symbols in their order. A program declares its alphabet in front of
+ * its states, like {@code alphabet "*01xy"}, otherwise it uses {@link #DEFAULT}. The {@code '*'} must
+ * be a symbol, {@code B} stands for the blank and cannot be one.
+ */
+public class Alphabet {
+    
+    public static final char BLANK = ' ';
+    
+    /** Most symbols, with the blank, so that a sweep mask fits in a {@code long}. */
+    public static final int MAX_SIZE = Long.SIZE;
+    
+    public static final Alphabet DEFAULT = new Alphabet("*01");
+    
+    static final String KEYWORD = "alphabet";
+    private static final String RESERVED = "B()[];\"";
+    
+    /** Creates the alphabet for the {@code symbols} of a declaration at {@code position}. */
+    static Alphabet of(String symbols, int position) throws ParseException {
+        try {
+            return symbols.equals(DEFAULT.toString()) ? DEFAULT : new Alphabet(symbols);
+        } catch (IllegalArgumentException ex) {
+            throw (ParseException) new ParseException("invalid alphabet, " + ex.getMessage(), position).initCause(ex);
+        }
+    }
+    
+    private final char[] symbols;
+    private final byte[] codes;
+    
+    Alphabet(String symbols) {
+        if (symbols.indexOf('*') == -1)
+            throw new IllegalArgumentException("missing '*'");
+        if (symbols.length() + 1 > MAX_SIZE)
+            throw new IllegalArgumentException("more than " + (MAX_SIZE - 1) + " symbols: " + symbols.length());
+        for (var i = 0; i < symbols.length(); i++) {
+            var ch = symbols.charAt(i);
+            if (ch <= ' ' || RESERVED.indexOf(ch) != -1)
+                throw new IllegalArgumentException(String.format("reserved symbol '%s' (0x%2x)", ch, (int)ch));
+        }
+        this.symbols = (BLANK + symbols).toCharArray();
+        var max = 0;
+        for (var ch : this.symbols) {
+            max = Math.max(max, ch);
+        }
+        codes = new byte[max+1];
+        Arrays.fill(codes, (byte) -1);
+        for (var i = 0; i < this.symbols.length; i++) {
+            if (codes[this.symbols[i]] != -1)
+                throw new IllegalArgumentException("duplicate symbol '" + this.symbols[i] + "'");
+            codes[this.symbols[i]] = (byte) i;
+        }
+    }
+    
+    public int size() {
+        return symbols.length;
+    }
+    
+    /** Bits of a cell of a packed tape, 2, 4 or 8 so that a word holds a power of two of cells. */
+    public int bits() {
+        var bits = 2;
+        while (1 << bits < symbols.length) {
+            bits *= 2;
+        }
+        return bits;
+    }
+    
+    public int code(char symbol) {
+        return symbol < codes.length ? codes[symbol] : -1;
+    }
+    
+    public char symbol(int code) {
+        return symbols[code];
+    }
+    
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this)
+            return true;
+        if (obj == null || obj.getClass() != getClass())
+            return false;
+        return Arrays.equals(symbols, ((Alphabet) obj).symbols);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(symbols);
+    }
+    
+    @Override
+    public String toString() {
+        return new String(symbols, 1, symbols.length-1);
+    }
+}
@@ -1,137 +1,39 @@
 package cfh.turing;
 
-import static java.util.Objects.*;
-
-import java.nio.CharBuffer;
-import java.text.ParseException;
-import java.util.HashMap;
-import java.util.NoSuchElementException;
-
 public class Alternative implements Positionable {
     
-    static Alternative parse(CharBuffer text) throws ParseException {
-        int start = text.position();
-        if (!text.hasRemaining() || text.get() != '(') 
-            throw new ParseException("reading alternative, missing '('", start);
-
-        char expected = 0;
-        char replace = 0;
-        Command command = null;
-        StringBuilder jumpText = null;
-        while (text.hasRemaining()) {
-            var ch = text.get();
-            switch (ch) {
-                case ' ':
-                case '\r':
-                case '\n':
-                    break;
-                case ';':
-                    while (text.hasRemaining() && text.get() != '\n') {
-                        text.mark();
-                    }
-                    text.reset();
-                    break;
-                case ')':
-                    if (expected == 0)
-                        throw new ParseException("missing expected symbol", text.position()-1);
-                    if (replace == 0)
-                        throw new ParseException("missing replace symbol", text.position()-1);
-                    if (command == null)
-                        throw new ParseException("missing command", text.position()-1);
-                    if (jumpText == null)
-                        throw new ParseException("missing jump distance", text.position()-1);
-                    var position = new Position(start);
-                    position.end(text.position());
-                    if (jumpText.charAt(0) == '"') 
-                        return new Alternative(position, expected, replace, command, jumpText.toString().substring(1));
-                    int jump;
-                    try {
-                        jump = Integer.parseInt(jumpText.toString());
-                    } catch (NumberFormatException ex) {
-                        throw (ParseException) new ParseException("invalid jump " + jumpText, text.position()-1).initCause(ex);
-                    }
-                    return new Alternative(position, expected, replace, command, jump);
-                default:
-                    if (expected == 0) {
-                        if (ch == 'B') {
-                            expected = ' ';
-                            break;
-                        }
-                        if ("*01".indexOf(ch) != -1) {
-                            expected = ch;
-                            break;
-                        }
-                    } else if (replace == 0) {
-                        if (ch == 'B') {
-                            replace = ' ';
-                            break;
-                        }
-                        if ("*01".indexOf(ch) != -1) {
-                            replace = ch;
-                            if ((expected == '*') != (replace == '*'))
-                                throw new ParseException("invalid replace '" + replace + "'", text.position()-1);
-                            break;
-                        }
-                    } else if (command == null) {
-                        try {
-                            command = Command.of(ch);
-                        } catch (NoSuchElementException ex) {
-                            throw (ParseException) new ParseException("invalid command '" + ch + "'", text.position()-1).initCause(ex);
-                        }
-                        break;
-                    } else if (jumpText == null) {
-                        jumpText = new StringBuilder();
-                        if (ch == '"') {
-                            var startPosition = text.position();
-                            jumpText.append(ch);
-                            while (text.hasRemaining()) {
-                                var c = text.get();
-                                if (c == '"' )
-                                    break;
-                                if (c == '\n' || c == '\r')
-                                    throw new ParseException("label not terminated at end of line", startPosition);
-                                jumpText.append(c);
-                            }
-                            break;
-                        } else if (('0' <= ch && ch <= '9') || ch == '+' || ch == '-') {
-                            jumpText.append(ch);
-                            break;
-                        }
-                    } else {
-                        if ('0' <= ch && ch <= '9') {
-                            jumpText.append(ch);
-                            break;
-                        }
-                    }
-                    throw new ParseException(String.format("reading alternative, unrecognized character '%s' (0x%2x)", ch, (int)ch), text.position()-1);
-            }
-        }
-        throw new ParseException("unexpected end of text reading alternative", text.position()-1);
-    }
-
     final Position position;
     final char expected;
     final char replace;
     final Command command;
-    private int jump;
-    private String label;
+    private final int jump;
+    private final String label;
+    // symbols and commands of all tapes, null for a single-tape program
+    private final String groups;
     
-    private Alternative(Position position, char expected, char replace, Command command, int jump) {
-        this.position = requireNonNull(position);
-        this.expected = expected;
-        this.replace = replace;
-        this.command = command;
-        this.jump = jump;
-        label = null;
+    /** A view of the alternative {@code index} of {@code program}. */
+    Alternative(Program program, int index) {
+        position = new Position(program.start(index));
+        position.end(program.end(index));
+        expected = program.expected(index);
+        replace = program.replace(index);
+        command = program.command(index);
+        jump = program.jump(index);
+        label = program.label(index);
+        groups = program.tapes() == 1 ? null : groups(program, index);
     }
     
-    private Alternative(Position position, char expected, char replace, Command command, String label) {
-        this.position = requireNonNull(position);
-        this.expected = expected;
-        this.replace = replace;
-        this.command = command;
-        jump = Integer.MIN_VALUE;
-        this.label = requireNonNull(label);
+    private static String groups(Program program, int index) {
+        var expected = new StringBuilder("[");
+        var replace = new StringBuilder("[");
+        var command = new StringBuilder("[");
+        for (var t = 0; t < program.tapes(); t++) {
+            var separator = t == 0 ? "" : " ";
+            expected.append(separator).append(symbol(program.expected(index, t)));
+            replace.append(separator).append(symbol(program.replace(index, t)));
+            command.append(separator).append(program.command(index, t));
+        }
+        return expected + "] " + replace + "] " + command + "]";
     }
     
     @Override
@@ -140,29 +42,18 @@ public class Alternative implements Positionable {
     }
     
     public int jump() {
-        if (jump == Integer.MIN_VALUE)
-            throw new IllegalStateException("label not resolved: \"" + label + "\"");
         return jump;
     }
     
-    private char symbol(char symbol) {
+    private static char symbol(char symbol) {
         return symbol == ' ' ? 'B' : symbol;
     }
 
-    void resolve(int state, HashMap<String, Integer> labels) throws ParseException {
-        if (label != null) {
-            if (labels.containsKey(label)) {
-                jump = labels.get(label) - state;
-            } else {
-                throw new ParseException("unknown label \"" + label + "\"", position.end());
-            }
-        }
-    }
-    
     @Override
     public String toString() {
+        var symbols = groups != null ? groups : String.format("%s %s %s", symbol(expected), symbol(replace), command);
         return label == null 
-            ? String.format("(%s %s %s %d)", symbol(expected), symbol(replace), command, jump)
-                : String.format("(%s %s %s \"%s\"(%d))", symbol(expected), symbol(replace), command, label, jump);
+            ? String.format("(%s %d)", symbols, jump)
+                : String.format("(%s \"%s\"(%d))", symbols, label, jump);
     }
 }
@@ -0,0 +1,19 @@
+package cfh.turing;
+
+import static java.util.Objects.*;
+
+@SuppressWarnings("serial")
+public class AlternativeException extends RunException {
+    
+    public final Alternative alternative;
+    
+    AlternativeException(Alternative alternative, String format, Object... args) {
+        super(format, args);
+        this.alternative = requireNonNull(alternative); 
+    }
+    
+    @Override
+    Position position() {
+        return alternative.position;
+    }
+}
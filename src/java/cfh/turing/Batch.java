@@ -0,0 +1,188 @@
+package cfh.turing;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Runs one program against many tapes on a pool of worker threads, all sharing the same compiled
+ * {@link Table}. Tapes are the {@code .tape} files of a directory, or paths read from standard
+ * input if the source is {@code -}. One line is written per tape as soon as it finishes.
+ */
+public class Batch {
+    
+    private static final String USAGE = "usage: Batch [-steps <max>] [-threads <count>] "
+        + "[-block <size> [-cache <entries>] | -compiled] <program> <directory>|-...";
+    
+    private static final String SUFFIX = ".tape";
+    
+    public static void main(String[] args) {
+        System.exit(new Batch().run(args));
+    }
+    
+    private long maxSteps = Long.MAX_VALUE;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int block = 0;
+    private int cache = BlockMachine.DEFAULT_CACHE;
+    private boolean compiled = false;
+    
+    private Table table;
+    private CompiledMachine.Code code = null;
+    private Writer out;
+    
+    private final AtomicLong halted = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong steps = new AtomicLong();
+    
+    private Batch() {
+    }
+    
+    private int run(String[] args) {
+        var index = 0;
+        try {
+            for (; index < args.length && args[index].startsWith("-") && !args[index].equals("-"); index++) {
+                switch (args[index]) {
+                    case "-steps":
+                        maxSteps = Long.parseLong(args[++index]);
+                        break;
+                    case "-threads":
+                        threads = Integer.parseInt(args[++index]);
+                        if (threads < 1)
+                            throw new IllegalArgumentException("invalid thread count " + threads);
+                        break;
+                    case "-block":
+                        block = Integer.parseInt(args[++index]);
+                        break;
+                    case "-cache":
+                        cache = Integer.parseInt(args[++index]);
+                        break;
+                    case "-compiled":
+                        compiled = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unrecognized option " + args[index]);
+                }
+            }
+            if (block != 0 && compiled)
+                throw new IllegalArgumentException("-block cannot be combined with -compiled");
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+        if (args.length - index < 2) {
+            System.err.println(USAGE);
+            return 2;
+        }
+        
+        try {
+            table = Table.compile(Runner.load(Paths.get(args[index++])));
+            if (table.tapes() > 1 && (block != 0 || compiled))
+                throw new IllegalArgumentException("program for " + table.tapes() + " tapes, -block and -compiled run a single tape only");
+            if (compiled) {
+                code = CompiledMachine.compile(table);
+            }
+        } catch (IOException | ParseException | IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            return 2;
+        }
+        
+        out = new BufferedWriter(new OutputStreamWriter(System.out));
+        // bounded queue with caller-runs, so a huge input stream does not pile up as pending tasks
+        var executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(threads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+        var start = System.nanoTime();
+        try {
+            for (; index < args.length; index++) {
+                try (var paths = tapes(args[index])) {
+                    paths.forEach(path -> executor.execute(() -> run(path)));
+                }
+            }
+        } catch (IOException | UncheckedIOException ex) {
+            System.err.println(ex);
+            failed.incrementAndGet();
+        } finally {
+            executor.shutdown();
+        }
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // still running
+            }
+            synchronized (out) {
+                out.flush();
+            }
+        } catch (InterruptedException ex) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            System.err.println(ex);
+        }
+        var seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("%d halted, %d failed, %d steps in %.3f s on %d threads%n",
+            halted.get(), failed.get(), steps.get(), seconds, threads);
+        return failed.get() == 0 ? 0 : 1;
+    }
+    
+    private static Stream<Path> tapes(String source) throws IOException {
+        if (source.equals("-")) {
+            var in = new BufferedReader(new InputStreamReader(System.in));
+            return in.lines().map(String::trim).filter(line -> !line.isEmpty()).map(Paths::get);
+        }
+        return Files.list(Paths.get(source))
+            .filter(path -> path.getFileName().toString().endsWith(SUFFIX) && Files.isRegularFile(path))
+            .sorted();
+    }
+    
+    private void run(Path path) {
+        String line;
+        try {
+            var text = Files.readString(path).trim();
+            Engine engine;
+            if (table.tapes() > 1) {
+                engine = new MultiMachine(table);
+            } else if (block != 0) {
+                engine = new BlockMachine(table, block, cache);
+            } else if (code != null) {
+                engine = new CompiledMachine(table, code);
+            } else {
+                engine = new Machine(table);
+            }
+            engine.load(text);
+            var result = engine.run(maxSteps);
+            steps.addAndGet(result.steps);
+            if (result.reason == Result.Reason.HALTED) {
+                halted.incrementAndGet();
+            } else {
+                failed.incrementAndGet();
+            }
+            line = String.format("%s: %s: %s", path, result, result.text());
+        } catch (IOException | RunException | RuntimeException ex) {
+            // any failure of one tape, an uncaught one would only end the pool thread silently
+            failed.incrementAndGet();
+            line = String.format("%s: %s", path, ex);
+        }
+        try {
+            synchronized (out) {
+                out.write(line);
+                out.write(System.lineSeparator());
+                // each tape as soon as it finishes, nothing is lost if the batch is killed
+                out.flush();
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
@@ -0,0 +1,451 @@
+package cfh.turing;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Measures parsing and step throughput. Each benchmark is run for some warmup iterations, then for
+ * the measured ones; an iteration repeats the benchmark until its time is up and scores the units
+ * done per second (characters parsed, lookups or steps). The scores are printed as a table and,
+ * with {@code -json}, written in the JSON format of JMH so the usual tools can read and compare them.
+ *
+ * The programs are read from the test directory: {@code add.turing}, {@code add2.turing},
+ * {@code add3tape.turing} and {@code addmarks.turing}.
+ */
+public class Bench {
+    
+    private static final String USAGE = "usage: Bench [-warmup <iterations>] [-iterations <count>] [-time <ms>] "
+        + "[-json <file>|-] [-dir <directory>] [<name pattern>...]";
+    
+    private static final String PREFIX = Bench.class.getName() + ".";
+    
+    // two-sided 99.9% quantiles of Student's t distribution for 1 to 30 degrees of freedom, as JMH uses
+    private static final double[] T = {
+        636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+        4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850,
+        3.819, 3.792, 3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646 };
+    
+    public static void main(String[] args) {
+        System.exit(new Bench().run(args));
+    }
+    
+    private int warmup = 3;
+    private int iterations = 5;
+    private long time = 1000;
+    private String json = null;
+    private Path dir = Paths.get("src/test");
+    private final List<Pattern> patterns = new ArrayList<>();
+    
+    // results of the measured code are added up here, so it cannot be optimized away
+    private long sink = 0;
+    
+    private Bench() {
+    }
+    
+    private int run(String[] args) {
+        try {
+            for (var index = 0; index < args.length; index++) {
+                switch (args[index]) {
+                    case "-warmup":
+                        warmup = Integer.parseInt(args[++index]);
+                        if (warmup < 0)
+                            throw new IllegalArgumentException("invalid warmup count " + warmup);
+                        break;
+                    case "-iterations":
+                        iterations = Integer.parseInt(args[++index]);
+                        if (iterations < 1)
+                            throw new IllegalArgumentException("invalid iteration count " + iterations);
+                        break;
+                    case "-time":
+                        time = Long.parseLong(args[++index]);
+                        if (time < 1)
+                            throw new IllegalArgumentException("invalid time " + time);
+                        break;
+                    case "-json":
+                        json = args[++index];
+                        break;
+                    case "-dir":
+                        dir = Paths.get(args[++index]);
+                        break;
+                    default:
+                        if (args[index].startsWith("-"))
+                            throw new IllegalArgumentException("unrecognized option " + args[index]);
+                        patterns.add(Pattern.compile(args[index]));
+                        break;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+        
+        List<Benchmark> benchmarks;
+        try {
+            benchmarks = benchmarks();
+        } catch (IOException | ParseException | IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            return 2;
+        }
+        // the table goes to standard error if the JSON is written to standard output
+        var log = "-".equals(json) ? System.err : System.out;
+        log.printf("%-16s %-32s %16s %12s  %s%n", "benchmark", "params", "score", "error", "unit");
+        var scores = new ArrayList<Score>();
+        for (var benchmark : benchmarks) {
+            if (!selected(benchmark))
+                continue;
+            Score score;
+            try {
+                score = measure(benchmark);
+            } catch (Exception ex) {
+                System.err.printf("%s %s: %s%n", benchmark.name, benchmark.params(), ex);
+                return 1;
+            }
+            scores.add(score);
+            log.printf("%-16s %-32s %16.1f %12.1f  %s%n", benchmark.name, benchmark.params(), score.mean(), score.error(), benchmark.unit);
+        }
+        if (sink == 42) {
+            log.println();
+        }
+        
+        if (json != null) {
+            try {
+                if (json.equals("-")) {
+                    writeJson(scores, System.out);
+                } else {
+                    try (var out = new PrintStream(Files.newOutputStream(Paths.get(json)), false, "UTF-8")) {
+                        writeJson(scores, out);
+                    }
+                }
+            } catch (IOException ex) {
+                System.err.println(ex);
+                return 1;
+            }
+        }
+        return 0;
+    }
+    
+    private boolean selected(Benchmark benchmark) {
+        if (patterns.isEmpty())
+            return true;
+        for (var pattern : patterns) {
+            if (pattern.matcher(benchmark.name).find())
+                return true;
+        }
+        return false;
+    }
+    
+    private List<Benchmark> benchmarks() throws IOException, ParseException {
+        var list = new ArrayList<Benchmark>();
+        
+        var add = Files.readString(dir.resolve("add.turing"));
+        var add2 = Files.readString(dir.resolve("add2.turing"));
+        var add3 = Files.readString(dir.resolve("add3tape.turing"));
+        var marks = Files.readString(dir.resolve("addmarks.turing"));
+        list.add(new Benchmark("parse.text", params("program", "add2.turing"), "chars/s", () -> parseText(add2)));
+        for (var states : new int[] { 1_000, 100_000 }) {
+            var text = generate(states);
+            var params = params("program", "generated", "states", states);
+            list.add(new Benchmark("parse.text", params, "chars/s", () -> parseText(text)));
+            list.add(new Benchmark("parse.reader", params, "chars/s", () -> {
+                try (var reader = new ProgramReader(new StringReader(text))) {
+                    sink += reader.read().stateCount();
+                    return reader.chars();
+                }
+            }));
+        }
+        
+        var program = Program.parseText(CharBuffer.wrap(add2));
+        list.add(new Benchmark("lookup", params("program", "add2.turing"), "lookups/s", () -> lookup(program)));
+        
+        var table = Table.compile(Program.parseText(CharBuffer.wrap(add)));
+        for (var bits : new int[] { 16, 256, 4096 }) {
+            var tape = "*" + "1".repeat(bits);
+            list.add(new Benchmark("run.add", params("engine", "machine", "bits", bits), "steps/s",
+                () -> run(new Machine(table), tape)));
+        }
+        
+        var table2 = Table.compile(program);
+        var code = CompiledMachine.compile(table2);
+        for (var bits : new int[] { 16, 128, 1024 }) {
+            var tape = "*" + number(bits) + " " + number(bits);
+            list.add(new Benchmark("run.add2", params("engine", "machine", "bits", bits), "steps/s",
+                () -> run(new Machine(table2), tape)));
+            list.add(new Benchmark("run.add2", params("engine", "block", "bits", bits), "steps/s",
+                () -> run(new BlockMachine(table2, BlockMachine.DEFAULT_BLOCK, BlockMachine.DEFAULT_CACHE), tape)));
+            list.add(new Benchmark("run.add2", params("engine", "compiled", "bits", bits), "steps/s",
+                () -> run(new CompiledMachine(table2, code), tape)));
+        }
+        
+        var table3 = Table.compile(Program.parseText(CharBuffer.wrap(add3)));
+        for (var bits : new int[] { 16, 128, 1024 }) {
+            var tape = "*" + number(bits) + " " + number(bits);
+            list.add(new Benchmark("run.add3tape", params("engine", "multi", "bits", bits), "steps/s",
+                () -> run(new MultiMachine(table3), tape)));
+        }
+        
+        var tableMarks = Table.compile(Program.parseText(CharBuffer.wrap(marks)));
+        for (var bits : new int[] { 16, 128, 1024 }) {
+            var tape = "*" + number(bits) + " " + number(bits);
+            list.add(new Benchmark("run.addmarks", params("engine", "machine", "bits", bits), "steps/s",
+                () -> run(new Machine(tableMarks), tape)));
+        }
+        
+        // writes to the right forever, every step extends the tape
+        var growth = Table.compile(Program.parseText(CharBuffer.wrap("(((* * R 1)) ((B 1 R 0)))")));
+        for (var cells : new int[] { 1 << 16, 1 << 22 }) {
+            list.add(new Benchmark("tape.growth", params("cells", cells), "steps/s", () -> {
+                var machine = new Machine(growth);
+                machine.load("*");
+                var result = machine.run(cells);
+                sink += result.tape.end();
+                return result.steps;
+            }));
+        }
+        
+        var tape = "*" + number(1024) + " " + number(1024);
+        Trace.Sink discard = (records, offset, count) -> { };
+        for (var level : new String[] { "off", "1000", "full" }) {
+            list.add(new Benchmark("trace", params("level", level, "bits", 1024), "steps/s", () -> {
+                try (var trace = Trace.of(level, discard)) {
+                    var machine = new Machine(table2);
+                    machine.trace(trace);
+                    return run(machine, tape);
+                }
+            }));
+        }
+        return list;
+    }
+    
+    private long parseText(String text) throws ParseException {
+        sink += Program.parseText(CharBuffer.wrap(text)).stateCount();
+        return text.length();
+    }
+    
+    /** Looks up the alternative for the expected symbol of every alternative of every state. */
+    private long lookup(Program program) {
+        var count = 0L;
+        for (var i = 0; i < program.stateCount(); i++) {
+            var state = program.state(i);
+            for (var j = program.first(i); j < program.first(i + 1); j++) {
+                sink += state.alternativeFor(program.expected(j)).jump();
+                count += 1;
+            }
+        }
+        return count;
+    }
+    
+    private long run(Engine engine, String tape) throws RunException {
+        engine.load(tape);
+        var result = engine.run(Long.MAX_VALUE);
+        if (result.reason != Result.Reason.HALTED)
+            throw new IllegalStateException("not halted: " + result);
+        sink += result.position;
+        return result.steps;
+    }
+    
+    private static Map<String, String> params(Object... pairs) {
+        var params = new LinkedHashMap<String, String>();
+        for (var i = 0; i < pairs.length; i += 2) {
+            params.put(pairs[i].toString(), pairs[i+1].toString());
+        }
+        return params;
+    }
+    
+    /** A program of {@code states} states with four alternatives each and a label jump. */
+    private static String generate(int states) {
+        var text = new StringBuilder(states * 64);
+        text.append("(\n");
+        for (var i = 0; i < states; i++) {
+            text.append(" ((* * R 1) (0 1 L 1) (1 0 R \"END\") (B 0 N 0)) ; state ").append(i).append('\n');
+        }
+        text.append(" \"END\" ((* * H 0)))\n");
+        return text.toString();
+    }
+    
+    /** A random binary number of {@code bits} bits, always the same for the same length. */
+    private static String number(int bits) {
+        var random = new Random(bits);
+        var text = new StringBuilder(bits);
+        text.append('1');
+        for (var i = 1; i < bits; i++) {
+            text.append(random.nextBoolean() ? '1' : '0');
+        }
+        return text.toString();
+    }
+    
+    private Score measure(Benchmark benchmark) throws Exception {
+        System.gc();
+        for (var i = 0; i < warmup; i++) {
+            iteration(benchmark);
+        }
+        var scores = new double[iterations];
+        for (var i = 0; i < iterations; i++) {
+            scores[i] = iteration(benchmark);
+        }
+        return new Score(benchmark, scores);
+    }
+    
+    private double iteration(Benchmark benchmark) throws Exception {
+        var units = 0L;
+        var start = System.nanoTime();
+        var deadline = start + time * 1_000_000;
+        long now;
+        do {
+            units += benchmark.body.run();
+        } while ((now = System.nanoTime()) < deadline);
+        return units * 1e9 / (now - start);
+    }
+    
+    private void writeJson(List<Score> scores, PrintStream out) {
+        out.println("[");
+        for (var i = 0; i < scores.size(); i++) {
+            var score = scores.get(i);
+            var benchmark = score.benchmark;
+            out.println("    {");
+            out.printf("        \"benchmark\" : %s,%n", quote(PREFIX + benchmark.name));
+            out.println("        \"mode\" : \"thrpt\",");
+            out.println("        \"threads\" : 1,");
+            out.println("        \"forks\" : 1,");
+            out.printf("        \"jvm\" : %s,%n", quote(Paths.get(System.getProperty("java.home"), "bin", "java").toString()));
+            out.printf("        \"jdkVersion\" : %s,%n", quote(System.getProperty("java.version")));
+            out.printf("        \"vmName\" : %s,%n", quote(System.getProperty("java.vm.name")));
+            out.printf("        \"vmVersion\" : %s,%n", quote(System.getProperty("java.vm.version")));
+            out.printf("        \"warmupIterations\" : %d,%n", warmup);
+            out.printf("        \"warmupTime\" : \"%d ms\",%n", time);
+            out.printf("        \"measurementIterations\" : %d,%n", iterations);
+            out.printf("        \"measurementTime\" : \"%d ms\",%n", time);
+            out.println("        \"params\" : {");
+            var params = new ArrayList<String>();
+            benchmark.params.forEach((key, value) -> params.add("            " + quote(key) + " : " + quote(value)));
+            out.println(String.join("," + System.lineSeparator(), params));
+            out.println("        },");
+            out.println("        \"primaryMetric\" : {");
+            out.printf("            \"score\" : %s,%n", number(score.mean()));
+            out.printf("            \"scoreError\" : %s,%n", number(score.error()));
+            out.printf("            \"scoreConfidence\" : [ %s, %s ],%n",
+                number(score.mean() - score.error()), number(score.mean() + score.error()));
+            out.printf("            \"scoreUnit\" : %s,%n", quote(benchmark.unit));
+            var raw = new ArrayList<String>();
+            for (var value : score.scores) {
+                raw.add(number(value));
+            }
+            out.printf("            \"rawData\" : [ [ %s ] ]%n", String.join(", ", raw));
+            out.println("        },");
+            out.println("        \"secondaryMetrics\" : {");
+            out.println("        }");
+            out.println(i + 1 < scores.size() ? "    }," : "    }");
+        }
+        out.println("]");
+        out.flush();
+    }
+    
+    private static String quote(String text) {
+        var quoted = new StringBuilder(text.length() + 2);
+        quoted.append('"');
+        for (var i = 0; i < text.length(); i++) {
+            var ch = text.charAt(i);
+            switch (ch) {
+                case '"': quoted.append("\\\""); break;
+                case '\\': quoted.append("\\\\"); break;
+                case '\n': quoted.append("\\n"); break;
+                case '\r': quoted.append("\\r"); break;
+                case '\t': quoted.append("\\t"); break;
+                default:
+                    if (ch < ' ') {
+                        quoted.append(String.format("\\u%04x", (int) ch));
+                    } else {
+                        quoted.append(ch);
+                    }
+                    break;
+            }
+        }
+        return quoted.append('"').toString();
+    }
+    
+    /** A JSON number, or the string {@code "NaN"} like JMH writes it. */
+    private static String number(double value) {
+        return Double.isFinite(value) ? String.format(Locale.ROOT, "%.3f", value) : "\"NaN\"";
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    private interface Body {
+        /** Runs the benchmark once, returns the units done. */
+        long run() throws Exception;
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    private static final class Benchmark {
+        
+        final String name;
+        final Map<String, String> params;
+        final String unit;
+        final Body body;
+        
+        Benchmark(String name, Map<String, String> params, String unit, Body body) {
+            this.name = name;
+            this.params = params;
+            this.unit = unit;
+            this.body = body;
+        }
+        
+        String params() {
+            var text = new StringBuilder();
+            params.forEach((key, value) -> text.append(text.length() == 0 ? "" : ",").append(key).append('=').append(value));
+            return text.toString();
+        }
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    private static final class Score {
+        
+        final Benchmark benchmark;
+        final double[] scores;
+        
+        Score(Benchmark benchmark, double[] scores) {
+            this.benchmark = benchmark;
+            this.scores = scores;
+        }
+        
+        double mean() {
+            var sum = 0.0;
+            for (var score : scores) {
+                sum += score;
+            }
+            return sum / scores.length;
+        }
+        
+        /** Half width of the 99.9% confidence interval of the mean, NaN for a single score. */
+        double error() {
+            var n = scores.length;
+            if (n < 2)
+                return Double.NaN;
+            var mean = mean();
+            var sum = 0.0;
+            for (var score : scores) {
+                sum += (score - mean) * (score - mean);
+            }
+            var deviation = Math.sqrt(sum / (n - 1));
+            var df = n - 1;
+            // above 30 degrees of freedom the quantile nears the normal 3.291
+            var t = df <= T.length ? T[df-1] : 3.291 + (T[T.length-1] - 3.291) * T.length / df;
+            return t * deviation / Math.sqrt(n);
+        }
+    }
+}
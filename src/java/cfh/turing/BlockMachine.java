@@ -0,0 +1,320 @@
+package cfh.turing;
+
+import static java.util.Objects.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class BlockMachine implements Engine {
+    
+    public static final int DEFAULT_BLOCK = 8;
+    public static final int DEFAULT_CACHE = 1 << 16;
+    
+    private static final int LEFT = 0;
+    private static final int RIGHT = 1;
+
+    private final Table table;
+    private final int size;
+    private final int bits;
+    private final long mask;
+    private final Map<Key, Transition> cache;
+    private final Key lookup = new Key();
+    
+    private PackedTape tape;
+    private int stateIndex;
+    private long steps;
+    private boolean halted;
+    
+    private long hits;
+    private long misses;
+    private long evictions;
+    
+    public BlockMachine(Program program) {
+        this(Table.compile(program), DEFAULT_BLOCK, DEFAULT_CACHE);
+    }
+    
+    public BlockMachine(Table table, int size, int capacity) {
+        this.table = requireNonNull(table);
+        table.requireSingleTape();
+        if (table.stateCount() == 0)
+            throw new IllegalArgumentException("empty program");
+        tape = new PackedTape(table.alphabet, "*");
+        bits = tape.bits();
+        if (size < 1 || Integer.bitCount(size) != 1 || size * bits > Long.SIZE)
+            throw new IllegalArgumentException("block size must be a power of two up to " + Long.SIZE / bits + ": " + size);
+        if (capacity < 1)
+            throw new IllegalArgumentException("invalid cache capacity: " + capacity);
+        this.size = size;
+        mask = (1L << bits) - 1;
+        cache = new LinkedHashMap<>(Math.min(capacity, DEFAULT_CACHE), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Transition> eldest) {
+                if (size() > capacity) {
+                    evictions += 1;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    @Override
+    public void load(String text) throws RunException {
+        if (text.isEmpty() || text.charAt(0) != '*')
+            throw new RunException("tape must start with '*'");
+        try {
+            tape = new PackedTape(table.alphabet, text);
+        } catch (IllegalArgumentException ex) {
+            throw (RunException) new RunException("invalid tape, %s", ex.getMessage()).initCause(ex);
+        }
+        stateIndex = 0;
+        steps = 0;
+        halted = false;
+    }
+    
+    @Override
+    public Table table() {
+        return table;
+    }
+    
+    @Override
+    public Tape tape() {
+        return tape;
+    }
+    
+    @Override
+    public int state() {
+        return stateIndex;
+    }
+    
+    @Override
+    public long steps() {
+        return steps;
+    }
+    
+    @Override
+    public boolean halted() {
+        return halted;
+    }
+    
+    public int blockSize() {
+        return size;
+    }
+    
+    public long hits() {
+        return hits;
+    }
+    
+    public long misses() {
+        return misses;
+    }
+    
+    public long evictions() {
+        return evictions;
+    }
+    
+    public int cached() {
+        return cache.size();
+    }
+    
+    @Override
+    public Result run(long maxSteps) throws RunException {
+        if (halted)
+            return result(Result.Reason.HALTED);
+        
+        var count = 0L;
+        var reason = Result.Reason.LIMIT;
+        try {
+            while (count < maxSteps) {
+                if (Thread.interrupted()) {
+                    reason = Result.Reason.INTERRUPTED;
+                    break;
+                }
+                var head = tape.head();
+                var block = head / size;
+                var offset = (int) (head - block * size);
+                var content = tape.block(block, size);
+                
+                if (offset == 0 || offset == size-1) {
+                    lookup.set(stateIndex, offset == 0 ? LEFT : RIGHT, content);
+                    var transition = cache.get(lookup);
+                    if (transition != null && transition.steps <= maxSteps - count) {
+                        hits += 1;
+                        count += transition.steps;
+                        apply(block, transition.content, transition.exit, transition.visited, transition.last);
+                        stateIndex = transition.state;
+                        continue;
+                    }
+                }
+                
+                var transition = simulate(block, offset, content, maxSteps - count);
+                count += transition.steps;
+                if (transition.exit == -1) {
+                    tape.block(block, size, transition.content);
+                    tape.extend(block * size + transition.visited);
+                    tape.head(block * size + transition.offset);
+                    stateIndex = transition.state;
+                    if (transition.halted) {
+                        halted = true;
+                        reason = Result.Reason.HALTED;
+                        break;
+                    }
+                    continue;
+                }
+                if (offset == 0 || offset == size-1) {
+                    misses += 1;
+                    cache.put(new Key(lookup), transition);
+                }
+                apply(block, transition.content, transition.exit, transition.visited, transition.last);
+                stateIndex = transition.state;
+            }
+        } finally {
+            steps += count;
+        }
+        return result(reason);
+    }
+    
+    private void apply(long block, long content, int exit, int visited, int last) throws RunException {
+        tape.block(block, size, content);
+        tape.extend(block * size + visited);
+        if (exit == RIGHT) {
+            tape.head((block+1) * size);
+        } else if (block == 0) {
+            stateIndex = last / table.symbols;
+            tape.head(0);
+            throw new AlternativeException(table.alternative(stateIndex, last % table.symbols), "moving left of start");
+        } else {
+            tape.head(block * size - 1);
+        }
+    }
+    
+    /** Runs inside one block until the head leaves it, the machine halts or {@code limit} steps are done. */
+    private Transition simulate(long block, int offset, long content, long limit) throws RunException {
+        final var symbols = table.symbols;
+        final var replace = table.replace;
+        final var command = table.command;
+        final var next = table.next;
+        
+        var state = stateIndex;
+        var visited = offset;
+        var count = 0L;
+        var last = -1;
+        while (count < limit) {
+            var shift = offset * bits;
+            var symbol = (int) (content >>> shift & mask);
+            var index = state * symbols + symbol;
+            var cmd = command[index];
+            if (cmd == Table.MISSING) {
+                partial(block, offset, visited, content, state, count);
+                throw table.missing(state, table.alphabet.symbol(symbol), tape.head());
+            }
+            content = content & ~(mask << shift) | (long) replace[index] << shift;
+            count += 1;
+            last = index;
+            switch (cmd) {
+                case Table.HALT:
+                    return new Transition(content, state, -1, offset, visited, count, last, true);
+                case Table.LEFT:
+                case Table.SWEEP_LEFT:
+                    offset -= 1;
+                    break;
+                case Table.RIGHT:
+                case Table.SWEEP_RIGHT:
+                    offset += 1;
+                    break;
+                default:
+                    break;
+            }
+            var target = next[index];
+            if (target == Table.INVALID) {
+                if (offset < 0 && block == 0) {
+                    partial(block, 0, visited, content, state, count);
+                    throw new AlternativeException(table.alternative(state, symbol), "moving left of start");
+                }
+                partial(block, offset, Math.max(visited, Math.min(offset, size-1)), content, state, count);
+                throw table.invalid(state, symbol, block * size + offset);
+            }
+            state = target;
+            if (offset < 0)
+                return new Transition(content, state, LEFT, 0, visited, count, last, false);
+            if (offset == size)
+                return new Transition(content, state, RIGHT, 0, visited, count, last, false);
+            if (offset > visited) {
+                visited = offset;
+            }
+            if ((count & 0xFFFF) == 0 && Thread.currentThread().isInterrupted())
+                break;
+        }
+        return new Transition(content, state, -1, offset, visited, count, last, false);
+    }
+    
+    private void partial(long block, int offset, int visited, long content, int state, long count) {
+        tape.block(block, size, content);
+        tape.extend(block * size + visited);
+        tape.head(block * size + offset);
+        stateIndex = state;
+        steps += count;
+    }
+    
+    private Result result(Result.Reason reason) {
+        return new Result(reason, steps, stateIndex, tape);
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    private static final class Key {
+        
+        private int state;
+        private int side;
+        private long content;
+        
+        Key() {
+        }
+        
+        Key(Key key) {
+            set(key.state, key.side, key.content);
+        }
+        
+        void set(int state, int side, long content) {
+            this.state = state;
+            this.side = side;
+            this.content = content;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            var other = (Key) obj;
+            return state == other.state && side == other.side && content == other.content;
+        }
+        
+        @Override
+        public int hashCode() {
+            return (int) (content ^ content >>> 32) * 31 + state * 2 + side;
+        }
+    }
+    
+    private static final class Transition {
+        
+        final long content;
+        final int state;
+        final int exit;
+        final int offset;
+        final int visited;
+        final long steps;
+        final int last;
+        final boolean halted;
+        
+        Transition(long content, int state, int exit, int offset, int visited, long steps, int last, boolean halted) {
+            this.content = content;
+            this.state = state;
+            this.exit = exit;
+            this.offset = offset;
+            this.visited = visited;
+            this.steps = steps;
+            this.last = last;
+            this.halted = halted;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package cfh.turing;
+
+import static java.util.Objects.*;
+
+import java.lang.reflect.InvocationTargetException;
+
+public class CompiledMachine implements Engine {
+    
+    public interface Code {
+        public int run(Tape tape, int state, long limit, long[] out);
+    }
+    
+    private static final long CHUNK = 1L << 24;
+    
+    public static Code compile(Table table) throws IllegalArgumentException {
+        table.requireSingleTape();
+        var name = "cfh.turing.Compiled";
+        var bytes = Compiler.generate(table, name.replace('.', '/'));
+        var loader = new Loader(CompiledMachine.class.getClassLoader());
+        try {
+            return (Code) loader.define(name, bytes).getConstructor().newInstance();
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException ex) {
+            throw new IllegalStateException("loading compiled program", ex);
+        }
+    }
+
+    private final Table table;
+    private final Code code;
+    private final long[] out = new long[3];
+    
+    private Tape tape;
+    private int stateIndex;
+    private long steps;
+    private boolean halted;
+    
+    public CompiledMachine(Program program) {
+        this(Table.compile(program));
+    }
+    
+    public CompiledMachine(Table table) {
+        this(table, compile(table));
+    }
+    
+    public CompiledMachine(Table table, Code code) {
+        this.table = requireNonNull(table);
+        this.code = requireNonNull(code);
+        table.requireSingleTape();
+        if (table.stateCount() == 0)
+            throw new IllegalArgumentException("empty program");
+        tape = new PackedTape(table.alphabet, "*");
+    }
+    
+    @Override
+    public void load(String text) throws RunException {
+        if (text.isEmpty() || text.charAt(0) != '*')
+            throw new RunException("tape must start with '*'");
+        try {
+            load(new PackedTape(table.alphabet, text));
+        } catch (IllegalArgumentException ex) {
+            throw (RunException) new RunException("invalid tape, %s", ex.getMessage()).initCause(ex);
+        }
+    }
+    
+    public void load(Tape tape) throws RunException {
+        if (!tape.alphabet().equals(table.alphabet))
+            throw new RunException("tape alphabet \"%s\" does not match program alphabet \"%s\"", tape.alphabet(), table.alphabet);
+        if (tape.end() <= tape.start() || tape.get(0) != table.alphabet.code('*'))
+            throw new RunException("tape must start with '*'");
+        tape.head(0);
+        this.tape = tape;
+        stateIndex = 0;
+        steps = 0;
+        halted = false;
+    }
+    
+    @Override
+    public Table table() {
+        return table;
+    }
+    
+    @Override
+    public Tape tape() {
+        return tape;
+    }
+    
+    @Override
+    public int state() {
+        return stateIndex;
+    }
+    
+    @Override
+    public long steps() {
+        return steps;
+    }
+    
+    @Override
+    public boolean halted() {
+        return halted;
+    }
+    
+    @Override
+    public Result run(long maxSteps) throws RunException {
+        if (halted)
+            return new Result(Result.Reason.HALTED, steps, stateIndex, tape);
+        
+        var remaining = maxSteps;
+        while (remaining > 0) {
+            if (Thread.interrupted())
+                return new Result(Result.Reason.INTERRUPTED, steps, stateIndex, tape);
+            
+            var status = code.run(tape, stateIndex, Math.min(remaining, CHUNK), out);
+            steps += out[0];
+            remaining -= out[0];
+            var symbol = (int) out[2];
+            switch (status) {
+                case Compiler.HALTED:
+                    stateIndex = (int) out[1];
+                    halted = true;
+                    return new Result(Result.Reason.HALTED, steps, stateIndex, tape);
+                case Compiler.LIMIT:
+                    stateIndex = (int) out[1];
+                    break;
+                case Compiler.MISSING:
+                    stateIndex = (int) out[1];
+                    throw table.missing(stateIndex, table.alphabet.symbol(symbol), tape.head());
+                case Compiler.INVALID:
+                    stateIndex = (int) out[1];
+                    throw table.invalid(stateIndex, symbol, tape.head());
+                case Compiler.LEFT_OF_START:
+                    stateIndex = (int) out[1];
+                    throw new AlternativeException(table.alternative(stateIndex, symbol), "moving left of start");
+                default:
+                    throw new IllegalStateException("unexpected status " + status);
+            }
+        }
+        return new Result(Result.Reason.LIMIT, steps, stateIndex, tape);
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    private static final class Loader extends ClassLoader {
+        
+        Loader(ClassLoader parent) {
+            super(parent);
+        }
+        
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
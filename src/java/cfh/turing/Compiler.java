@@ -0,0 +1,458 @@
+package cfh.turing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates a class implementing {@link CompiledMachine.Code} for a {@link Table}: 
+ * one block per state, the symbol dispatch as {@code tableswitch}, jumps as direct branches.
+ * Class file version 49 is used so no stack map frames need to be computed.
+ */
+final class Compiler {
+    
+    static final int HALTED = 0;
+    static final int LIMIT = 1;
+    static final int MISSING = 2;
+    static final int INVALID = 3;
+    static final int LEFT_OF_START = 4;
+    
+    static final long SWEEP_LIMIT = 1L << 20;
+    
+    private static final String TAPE = "cfh/turing/Tape";
+    private static final String CODE = "cfh/turing/CompiledMachine$Code";
+    
+    // locals
+    private static final int TAPE_VAR = 1;
+    private static final int STATE_VAR = 2;
+    private static final int LIMIT_VAR = 3;
+    private static final int OUT_VAR = 5;
+    private static final int COUNT_VAR = 6;
+    private static final int SYMBOL_VAR = 8;
+    private static final int MAX_LOCALS = 9;
+    private static final int MAX_STACK = 8;
+    
+    private static final int MAX_CODE = 65535;
+    
+    static byte[] generate(Table table, String name) throws IllegalArgumentException {
+        var pool = new Pool();
+        var code = new Code();
+        
+        var read = pool.interfaceMethod(TAPE, "read", "()I");
+        var write = pool.interfaceMethod(TAPE, "write", "(I)V");
+        var left = pool.interfaceMethod(TAPE, "left", "()V");
+        var right = pool.interfaceMethod(TAPE, "right", "()V");
+        var head = pool.interfaceMethod(TAPE, "head", "()J");
+        var scanLeft = pool.interfaceMethod(TAPE, "scanLeft", "(JJ)J");
+        var scanRight = pool.interfaceMethod(TAPE, "scanRight", "(JJ)J");
+        var min = pool.method("java/lang/Math", "min", "(JJ)J");
+        var sweepLimit = pool.constant(SWEEP_LIMIT);
+        
+        var states = table.states;
+        var symbols = table.symbols;
+        var stateLabels = new Label[states];
+        for (var s = 0; s < states; s++) {
+            stateLabels[s] = new Label();
+        }
+        var exits = new Label[5];
+        for (var i = 0; i < exits.length; i++) {
+            exits[i] = new Label();
+        }
+        
+        code.op(0x09).local(0x37, COUNT_VAR);               // lconst_0, lstore count
+        code.op(0x03).local(0x36, SYMBOL_VAR);              // iconst_0, istore symbol
+        code.local(0x15, STATE_VAR);                        // iload state
+        code.tableswitch(stateLabels, exits[MISSING]);
+        
+        for (var s = 0; s < states; s++) {
+            code.mark(stateLabels[s]);
+            var limit = new Label();
+            code.local(0x16, COUNT_VAR).local(0x16, LIMIT_VAR).op(0x94);   // lload count, lload limit, lcmp
+            code.branch(0x9c, limit);                                      // ifge
+            code.local(0x19, TAPE_VAR).invokeInterface(read, 1);
+            code.local(0x36, SYMBOL_VAR);
+            code.local(0x15, SYMBOL_VAR);
+            var missing = new Label();
+            var cases = new Label[symbols];
+            for (var symbol = 0; symbol < symbols; symbol++) {
+                var index = s * symbols + symbol;
+                cases[symbol] = table.command[index] == Table.MISSING ? missing : new Label();
+            }
+            code.tableswitch(cases, missing);
+            
+            for (var symbol = 0; symbol < symbols; symbol++) {
+                var index = s * symbols + symbol;
+                var cmd = table.command[index];
+                if (cmd == Table.MISSING) 
+                    continue;
+                code.mark(cases[symbol]);
+                if (cmd == Table.SWEEP_LEFT || cmd == Table.SWEEP_RIGHT) {
+                    var mask = pool.constant(table.sweep[s]);
+                    code.local(0x19, TAPE_VAR).ldc2(mask);
+                    code.local(0x16, LIMIT_VAR).local(0x16, COUNT_VAR).op(0x65);   // limit - count
+                    code.ldc2(sweepLimit).invokeStatic(min);
+                    if (cmd == Table.SWEEP_RIGHT) {
+                        code.invokeInterface(scanRight, 5);
+                    } else {
+                        code.local(0x19, TAPE_VAR).invokeInterface(head, 1).invokeStatic(min);
+                        code.invokeInterface(scanLeft, 5);
+                        var moved = new Label();
+                        code.op(0x5c).op(0x09).op(0x94).branch(0x9a, moved);     // dup2, lconst_0, lcmp, ifne
+                        code.op(0x58);                                           // pop2
+                        var step = new Label();
+                        code.jump(step);
+                        code.mark(moved);
+                        code.local(0x16, COUNT_VAR).op(0x61).local(0x37, COUNT_VAR);
+                        code.jump(stateLabels[s]);
+                        code.mark(step);
+                        emitStep(code, table, index, s, symbol, stateLabels, exits, write, left, right, head);
+                        continue;
+                    }
+                    code.local(0x16, COUNT_VAR).op(0x61).local(0x37, COUNT_VAR);   // count += moved
+                    code.jump(stateLabels[s]);
+                } else {
+                    emitStep(code, table, index, s, symbol, stateLabels, exits, write, left, right, head);
+                }
+            }
+            
+            code.mark(missing);
+            code.constant(s).local(0x36, STATE_VAR);
+            code.jump(exits[MISSING]);
+            code.mark(limit);
+            code.constant(s).local(0x36, STATE_VAR);
+            code.jump(exits[LIMIT]);
+            if (code.size() > MAX_CODE)
+                throw new IllegalArgumentException("program too large to compile: " + states + " states");
+        }
+        
+        for (var status = 0; status < exits.length; status++) {
+            code.mark(exits[status]);
+            code.local(0x19, OUT_VAR).op(0x03).local(0x16, COUNT_VAR).op(0x50);           // out[0] = count
+            code.local(0x19, OUT_VAR).op(0x04).local(0x15, STATE_VAR).op(0x85).op(0x50);  // out[1] = state
+            code.local(0x19, OUT_VAR).op(0x05).local(0x15, SYMBOL_VAR).op(0x85).op(0x50); // out[2] = symbol
+            code.constant(status).op(0xac);                                               // ireturn
+        }
+        if (code.size() > MAX_CODE)
+            throw new IllegalArgumentException("program too large to compile: " + states + " states");
+        
+        return classFile(pool, code.resolve(), name);
+    }
+    
+    private static void emitStep(Code code, Table table, int index, int state, int symbol, 
+            Label[] stateLabels, Label[] exits, int write, int left, int right, int head) {
+        var replace = table.replace[index];
+        if (replace != symbol) {
+            code.local(0x19, TAPE_VAR).constant(replace).invokeInterface(write, 2);
+        }
+        code.local(0x16, COUNT_VAR).op(0x0a).op(0x61).local(0x37, COUNT_VAR);      // count += 1
+        switch (table.command[index]) {
+            case Table.HALT:
+                code.constant(state).local(0x36, STATE_VAR);
+                code.jump(exits[HALTED]);
+                return;
+            case Table.LEFT:
+            case Table.SWEEP_LEFT:
+                var ok = new Label();
+                code.local(0x19, TAPE_VAR).invokeInterface(head, 1).op(0x09).op(0x94).branch(0x9a, ok);
+                code.constant(state).local(0x36, STATE_VAR);
+                code.jump(exits[LEFT_OF_START]);
+                code.mark(ok);
+                code.local(0x19, TAPE_VAR).invokeInterface(left, 1);
+                break;
+            case Table.RIGHT:
+            case Table.SWEEP_RIGHT:
+                code.local(0x19, TAPE_VAR).invokeInterface(right, 1);
+                break;
+            case Table.NOP:
+                break;
+            default:
+                throw new IllegalArgumentException("unhandled command " + table.command[index]);
+        }
+        var target = table.next[index];
+        if (target == Table.INVALID) {
+            code.constant(state).local(0x36, STATE_VAR);
+            code.jump(exits[INVALID]);
+        } else {
+            code.jump(stateLabels[target]);
+        }
+    }
+    
+    private static byte[] classFile(Pool pool, byte[] code, String name) {
+        var thisClass = pool.type(name);
+        var superClass = pool.type("java/lang/Object");
+        var iface = pool.type(CODE);
+        var objectInit = pool.method("java/lang/Object", "<init>", "()V");
+        var initName = pool.utf8("<init>");
+        var initDesc = pool.utf8("()V");
+        var runName = pool.utf8("run");
+        var runDesc = pool.utf8("(L" + TAPE + ";IJ[J)I");
+        var codeName = pool.utf8("Code");
+        
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            pool.write(out);
+            out.writeShort(0x0031);         // public final super
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(iface);
+            out.writeShort(0);              // fields
+            out.writeShort(2);              // methods
+            
+            out.writeShort(0x0001);
+            out.writeShort(initName);
+            out.writeShort(initDesc);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + 5);
+            out.writeShort(1);
+            out.writeShort(1);
+            out.writeInt(5);
+            out.writeByte(0x2a);            // aload_0
+            out.writeByte(0xb7);            // invokespecial
+            out.writeShort(objectInit);
+            out.writeByte(0xb1);            // return
+            out.writeShort(0);
+            out.writeShort(0);
+            
+            out.writeShort(0x0001);
+            out.writeShort(runName);
+            out.writeShort(runDesc);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + code.length);
+            out.writeShort(MAX_STACK);
+            out.writeShort(MAX_LOCALS);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(0);
+            out.writeShort(0);
+            
+            out.writeShort(0);              // attributes
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    private static final class Label {
+        private int address = -1;
+    }
+    
+    private static final class Code {
+        
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final List<int[]> fixups = new ArrayList<>();
+        private final List<Label> targets = new ArrayList<>();
+        
+        int size() {
+            return bytes.size();
+        }
+        
+        Code op(int opcode) {
+            bytes.write(opcode);
+            return this;
+        }
+        
+        Code local(int opcode, int index) {
+            bytes.write(opcode);
+            bytes.write(index);
+            return this;
+        }
+        
+        Code constant(int value) {
+            if (-1 <= value && value <= 5) {
+                bytes.write(0x03 + value);
+            } else if (Byte.MIN_VALUE <= value && value <= Byte.MAX_VALUE) {
+                bytes.write(0x10);
+                bytes.write(value);
+            } else if (Short.MIN_VALUE <= value && value <= Short.MAX_VALUE) {
+                bytes.write(0x11);
+                u2(value);
+            } else {
+                throw new IllegalArgumentException("constant too large: " + value);
+            }
+            return this;
+        }
+        
+        Code ldc2(int index) {
+            bytes.write(0x14);
+            u2(index);
+            return this;
+        }
+        
+        Code invokeInterface(int index, int count) {
+            bytes.write(0xb9);
+            u2(index);
+            bytes.write(count);
+            bytes.write(0);
+            return this;
+        }
+        
+        Code invokeStatic(int index) {
+            bytes.write(0xb8);
+            u2(index);
+            return this;
+        }
+        
+        Code branch(int opcode, Label label) {
+            var address = size();
+            bytes.write(opcode);
+            fixup(address, 2, label);
+            return this;
+        }
+        
+        Code jump(Label label) {
+            var address = size();
+            bytes.write(0xc8);              // goto_w
+            fixup(address, 4, label);
+            return this;
+        }
+        
+        Code tableswitch(Label[] labels, Label otherwise) {
+            var address = size();
+            bytes.write(0xaa);
+            while (size() % 4 != 0) {
+                bytes.write(0);
+            }
+            fixup(address, 4, otherwise);
+            u4(0);
+            u4(labels.length - 1);
+            for (var label : labels) {
+                fixup(address, 4, label);
+            }
+            return this;
+        }
+        
+        void mark(Label label) {
+            label.address = size();
+        }
+        
+        byte[] resolve() {
+            var code = bytes.toByteArray();
+            for (var i = 0; i < fixups.size(); i++) {
+                var fixup = fixups.get(i);
+                var target = targets.get(i).address;
+                if (target == -1)
+                    throw new IllegalStateException("unresolved label");
+                var offset = target - fixup[0];
+                var at = fixup[1];
+                if (fixup[2] == 2) {
+                    if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)
+                        throw new IllegalArgumentException("branch too far: " + offset);
+                    code[at] = (byte) (offset >> 8);
+                    code[at+1] = (byte) offset;
+                } else {
+                    code[at] = (byte) (offset >> 24);
+                    code[at+1] = (byte) (offset >> 16);
+                    code[at+2] = (byte) (offset >> 8);
+                    code[at+3] = (byte) offset;
+                }
+            }
+            return code;
+        }
+        
+        private void fixup(int address, int width, Label label) {
+            fixups.add(new int[] { address, size(), width });
+            targets.add(label);
+            for (var i = 0; i < width; i++) {
+                bytes.write(0);
+            }
+        }
+        
+        private void u2(int value) {
+            bytes.write(value >> 8);
+            bytes.write(value);
+        }
+        
+        private void u4(int value) {
+            u2(value >> 16);
+            u2(value);
+        }
+    }
+    
+    private static final class Pool {
+        
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> entries = new HashMap<>();
+        private int count = 1;
+        
+        int utf8(String text) {
+            return entry("U" + text, 1, () -> out.writeUTF(text));
+        }
+        
+        int type(String name) {
+            var index = utf8(name);
+            return entry("C" + name, 7, () -> out.writeShort(index));
+        }
+        
+        int constant(long value) {
+            var key = "J" + value;
+            if (entries.containsKey(key))
+                return entries.get(key);
+            var index = entry(key, 5, () -> out.writeLong(value));
+            count += 1;
+            return index;
+        }
+        
+        int method(String owner, String name, String descriptor) {
+            return member(10, owner, name, descriptor);
+        }
+        
+        int interfaceMethod(String owner, String name, String descriptor) {
+            return member(11, owner, name, descriptor);
+        }
+        
+        private int member(int tag, String owner, String name, String descriptor) {
+            var type = type(owner);
+            var nameIndex = utf8(name);
+            var descIndex = utf8(descriptor);
+            var nameAndType = entry("N" + name + ":" + descriptor, 12, () -> {
+                out.writeShort(nameIndex);
+                out.writeShort(descIndex);
+            });
+            return entry("M" + tag + owner + "." + name + ":" + descriptor, tag, () -> {
+                out.writeShort(type);
+                out.writeShort(nameAndType);
+            });
+        }
+        
+        void write(DataOutputStream target) throws IOException {
+            out.flush();
+            target.writeShort(count);
+            bytes.writeTo(target);
+        }
+        
+        private int entry(String key, int tag, Writer writer) {
+            var index = entries.get(key);
+            if (index == null) {
+                try {
+                    out.writeByte(tag);
+                    writer.write();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                index = count++;
+                entries.put(key, index);
+                if (count > 0xFFFF)
+                    throw new IllegalArgumentException("too many constants");
+            }
+            return index;
+        }
+        
+        private interface Writer {
+            void write() throws IOException;
+        }
+    }
+}
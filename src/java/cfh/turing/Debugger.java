@@ -0,0 +1,275 @@
+package cfh.turing;
+
+import static java.util.Objects.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.TreeMap;
+
+/**
+ * Runs a machine with periodic tape checkpoints and an undo log since the last checkpoint,
+ * so it can step backwards or jump to any step. The checkpoint interval doubles whenever the 
+ * checkpoints exceed the memory budget.
+ */
+public class Debugger {
+    
+    public static final long DEFAULT_INTERVAL = 1 << 12;
+    public static final long DEFAULT_BUDGET = 256L << 20;
+    
+    private static final int EXTENDED = 0x80;
+    
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("usage: Debugger <program> <tape>");
+            System.exit(2);
+        }
+        try {
+            var debugger = new Debugger(Table.compile(Runner.load(Paths.get(args[0]))), DEFAULT_INTERVAL, DEFAULT_BUDGET);
+            debugger.load(Files.readString(Paths.get(args[1])).trim());
+            debugger.console(new BufferedReader(new InputStreamReader(System.in)));
+        } catch (IOException | ParseException | RunException ex) {
+            System.err.println(ex);
+            System.exit(1);
+        }
+    }
+    
+    private final Table table;
+    private final Machine machine;
+    private final long budget;
+    private long interval;
+    
+    private final TreeMap<Long, Checkpoint> checkpoints = new TreeMap<>();
+    private long memory;
+    
+    private long logStart;
+    private int logSize;
+    private long[] logPositions = new long[16];
+    private int[] logStates = new int[16];
+    private byte[] logSymbols = new byte[16];
+    
+    public Debugger(Table table, long interval, long budget) {
+        this.table = requireNonNull(table);
+        if (interval < 1)
+            throw new IllegalArgumentException("invalid checkpoint interval: " + interval);
+        machine = new Machine(table);
+        this.interval = interval;
+        this.budget = budget;
+    }
+    
+    public void load(String text) throws RunException {
+        machine.load(text);
+        checkpoints.clear();
+        memory = 0;
+        checkpoint();
+    }
+    
+    public Machine machine() {
+        return machine;
+    }
+    
+    public long steps() {
+        return machine.steps();
+    }
+    
+    public long interval() {
+        return interval;
+    }
+    
+    public int checkpoints() {
+        return checkpoints.size();
+    }
+    
+    public long memory() {
+        return memory + logPositions.length * (long) (Long.BYTES + Integer.BYTES + 1);
+    }
+    
+    /** Executes up to {@code count} steps, stopping early if the machine halts. */
+    public Result forward(long count) throws RunException {
+        var target = machine.steps() + Math.min(count, Long.MAX_VALUE - machine.steps());
+        Result result = null;
+        while (!machine.halted() && machine.steps() < target) {
+            var boundary = (machine.steps() / interval + 1) * interval;
+            if (boundary <= target) {
+                result = machine.run(boundary - machine.steps());
+                if (result.reason == Result.Reason.INTERRUPTED)
+                    return result;
+                if (machine.steps() == boundary) {
+                    checkpoint();
+                }
+            } else {
+                result = step();
+            }
+        }
+        return result != null ? result : machine.run(0);
+    }
+    
+    /** Undoes up to {@code count} steps. */
+    public void back(long count) throws RunException {
+        var target = Math.max(0, machine.steps() - count);
+        if (target == machine.steps())
+            return;
+        if (target < logStart || !logged()) {
+            jump(target);
+            return;
+        }
+        var tape = (PackedTape) machine.tape();
+        var steps = machine.steps();
+        var state = machine.state();
+        while (steps > target) {
+            logSize -= 1;
+            var position = logPositions[logSize];
+            var symbol = logSymbols[logSize];
+            state = logStates[logSize];
+            tape.set(position, symbol & ~EXTENDED);
+            tape.head(position);
+            if ((symbol & EXTENDED) != 0) {
+                tape.truncate(tape.end() - 1);
+            }
+            steps -= 1;
+        }
+        machine.restore(tape, state, steps, false);
+    }
+    
+    /** Moves to the given step, restoring the nearest checkpoint if it lies behind the current step. */
+    public Result jump(long step) throws RunException {
+        if (step < 0)
+            throw new IllegalArgumentException("invalid step: " + step);
+        if (step >= logStart && step <= machine.steps() && logged()) {
+            back(machine.steps() - step);
+            return machine.run(0);
+        }
+        var checkpoint = checkpoints.floorEntry(step).getValue();
+        if (step < machine.steps() || checkpoint.steps > machine.steps()) {
+            restore(checkpoint);
+        }
+        return forward(step - machine.steps());
+    }
+    
+    /** Returns to the latest checkpoint before the current step. */
+    public void rewind() throws RunException {
+        var entry = checkpoints.lowerEntry(machine.steps());
+        if (entry != null) {
+            restore(entry.getValue());
+        }
+    }
+    
+    /**
+     * Whether the undo log holds every step since the last checkpoint; runs up to the next
+     * checkpoint are not logged, if they stop before it only replaying from the checkpoint goes back.
+     */
+    private boolean logged() {
+        return machine.steps() == logStart + logSize;
+    }
+    
+    private Result step() throws RunException {
+        var tape = machine.tape();
+        if (logSize == logPositions.length) {
+            var size = logSize * 2;
+            logPositions = Arrays.copyOf(logPositions, size);
+            logStates = Arrays.copyOf(logStates, size);
+            logSymbols = Arrays.copyOf(logSymbols, size);
+        }
+        var end = tape.end();
+        var steps = machine.steps();
+        logPositions[logSize] = tape.head();
+        logStates[logSize] = machine.state();
+        logSymbols[logSize] = (byte) tape.read();
+        try {
+            return machine.run(1);
+        } finally {
+            if (machine.steps() > steps) {
+                if (tape.end() > end) {
+                    logSymbols[logSize] |= EXTENDED;
+                }
+                logSize += 1;
+            }
+        }
+    }
+    
+    private void checkpoint() {
+        var steps = machine.steps();
+        logStart = steps;
+        logSize = 0;
+        if (checkpoints.containsKey(steps))
+            return;
+        var checkpoint = new Checkpoint(((PackedTape) machine.tape()).copy(), machine.state(), steps, machine.halted());
+        checkpoints.put(steps, checkpoint);
+        memory += checkpoint.tape.memory();
+        while (memory > budget && checkpoints.size() > 1) {
+            interval *= 2;
+            var iterator = checkpoints.values().iterator();
+            while (iterator.hasNext()) {
+                var c = iterator.next();
+                if (c.steps != 0 && c.steps % interval != 0) {
+                    memory -= c.tape.memory();
+                    iterator.remove();
+                }
+            }
+        }
+    }
+    
+    private void restore(Checkpoint checkpoint) {
+        machine.restore(checkpoint.tape.copy(), checkpoint.state, checkpoint.steps, checkpoint.halted);
+        logStart = checkpoint.steps;
+        logSize = 0;
+    }
+    
+    private void console(BufferedReader in) throws IOException {
+        System.out.println("commands: s [n] step, b [n] back, j <step> jump, r rewind, p print, q quit");
+        print();
+        String line;
+        while ((line = in.readLine()) != null) {
+            var words = line.trim().split("\\s+");
+            try {
+                switch (words[0]) {
+                    case "s": forward(words.length > 1 ? Long.parseLong(words[1]) : 1); break;
+                    case "b": back(words.length > 1 ? Long.parseLong(words[1]) : 1); break;
+                    case "j": jump(Long.parseLong(words[1])); break;
+                    case "r": rewind(); break;
+                    case "p": case "": break;
+                    case "q": return;
+                    default: System.out.println("unknown command: " + words[0]); continue;
+                }
+            } catch (RunException | RuntimeException ex) {
+                System.out.println(ex);
+            }
+            print();
+        }
+    }
+    
+    private void print() {
+        var tape = machine.tape();
+        var from = Math.max(tape.start(), tape.head() - 30);
+        var to = Math.min(tape.end(), tape.head() + 31);
+        var text = new StringBuilder();
+        for (var position = from; position < to; position++) {
+            text.append(table.alphabet.symbol(tape.get(position)));
+        }
+        System.out.printf("step %d, state %d, position %d%s (checkpoints %d every %d)%n", 
+            machine.steps(), machine.state(), tape.head(), machine.halted() ? ", halted" : "", checkpoints.size(), interval);
+        System.out.println(text);
+        System.out.println(" ".repeat((int) (tape.head() - from)) + "^");
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    private static final class Checkpoint {
+        
+        final PackedTape tape;
+        final int state;
+        final long steps;
+        final boolean halted;
+        
+        Checkpoint(PackedTape tape, int state, long steps, boolean halted) {
+            this.tape = tape;
+            this.state = state;
+            this.steps = steps;
+            this.halted = halted;
+        }
+    }
+}
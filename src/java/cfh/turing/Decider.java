@@ -0,0 +1,17 @@
+package cfh.turing;
+
+/**
+ * Stage of the run loop that watches the configuration and stops a run that never halts.
+ * Deciders are stateful, use a new instance for every run; see {@link Deciders} for implementations.
+ */
+public interface Decider {
+    
+    /** Returns the next step at which the decider wants to see the configuration, greater than {@code step}. */
+    public long next(long step);
+    
+    /** 
+     * Inspects the configuration before {@code step} is executed. 
+     * Returns a verdict if the run never halts, {@code null} to continue. 
+     */
+    public Verdict check(long step, int state, Tape tape);
+}
@@ -0,0 +1,381 @@
+package cfh.turing;
+
+import static java.util.Objects.*;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Non-halting deciders: exact cycles, translated cyclers and simple bouncers.
+ * All of them look at every step, so a run with deciders takes no sweep shortcuts.
+ */
+public final class Deciders {
+    
+    public static final int DEFAULT_WINDOW = 256;
+    public static final int DEFAULT_HISTORY = 64;
+    public static final int DEFAULT_REPEATS = 8;
+    
+    /** Cycles, translated cyclers and bouncers with default parameters. */
+    public static Decider standard() {
+        return all(cycles(), translatedCyclers(DEFAULT_WINDOW, DEFAULT_HISTORY), bouncers(DEFAULT_REPEATS));
+    }
+    
+    /** Only the deciders whose verdicts are proofs: cycles and translated cyclers. */
+    public static Decider proven() {
+        return all(cycles(), translatedCyclers(DEFAULT_WINDOW, DEFAULT_HISTORY));
+    }
+    
+    public static Decider all(Decider... deciders) {
+        return new All(deciders);
+    }
+    
+    /** Finds configurations that repeat exactly (Brent's algorithm on a rolling configuration hash). */
+    public static Decider cycles() {
+        return new Cycles();
+    }
+    
+    /**
+     * Finds configurations that repeat shifted to the right, comparing up to {@code window} cells
+     * left of the head at the last {@code history} record positions.
+     */
+    public static Decider translatedCyclers(int window, int history) {
+        if (window < 1 || history < 1)
+            throw new IllegalArgumentException("invalid window " + window + " or history " + history);
+        return new TranslatedCyclers(window, history);
+    }
+    
+    /**
+     * Finds machines bouncing between the tape ends while the tape grows by the same unit each time,
+     * with steps per bounce growing linearly, for {@code repeats} consecutive bounces. This is an
+     * observation, not a proof, so the verdict is not {@link Verdict#proven proven}.
+     */
+    public static Decider bouncers(int repeats) {
+        if (repeats < 3)
+            throw new IllegalArgumentException("need at least 3 repeats: " + repeats);
+        return new Bouncers(repeats);
+    }
+    
+    private Deciders() {
+        throw new AssertionError();
+    }
+    
+    private static int symbol(Tape tape, long position) {
+        return tape.start() <= position && position < tape.end() ? tape.get(position) : 0;
+    }
+    
+    private static byte[] cells(Tape tape, long from, long to) {
+        var cells = new byte[(int) (to - from)];
+        for (var i = 0; i < cells.length; i++) {
+            cells[i] = (byte) symbol(tape, from + i);
+        }
+        return cells;
+    }
+    
+    private static String text(Tape tape, byte[] cells) {
+        var alphabet = tape.alphabet();
+        var text = new StringBuilder(cells.length);
+        for (var cell : cells) {
+            text.append(alphabet.symbol(cell));
+        }
+        return text.toString();
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    private static final class All implements Decider {
+        
+        private final Decider[] deciders;
+        private final long[] next;
+        
+        All(Decider... deciders) {
+            this.deciders = deciders.clone();
+            for (var decider : this.deciders) {
+                requireNonNull(decider);
+            }
+            next = new long[deciders.length];
+        }
+        
+        @Override
+        public long next(long step) {
+            var min = Long.MAX_VALUE;
+            for (var i = 0; i < next.length; i++) {
+                min = Math.min(min, next[i]);
+            }
+            return Math.max(min, step + 1);
+        }
+        
+        @Override
+        public Verdict check(long step, int state, Tape tape) {
+            for (var i = 0; i < deciders.length; i++) {
+                if (next[i] <= step) {
+                    var verdict = deciders[i].check(step, state, tape);
+                    if (verdict != null)
+                        return verdict;
+                    next[i] = deciders[i].next(step);
+                }
+            }
+            return null;
+        }
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    private static final class Cycles implements Decider {
+        
+        private long hash;
+        private long last = -1;
+        private long previousHead;
+        private int previousSymbol;
+        
+        private long snapshot = -1;
+        private long interval = 1;
+        private int snapshotState;
+        private long snapshotHead;
+        private long snapshotHash;
+        private long snapshotStart;
+        private byte[] snapshotCells;
+        
+        @Override
+        public long next(long step) {
+            return step + 1;
+        }
+        
+        @Override
+        public Verdict check(long step, int state, Tape tape) {
+            if (step == last + 1) {
+                var current = symbol(tape, previousHead);
+                hash += (current - previousSymbol) * weight(previousHead);
+            } else {
+                hash = 0;
+                for (var position = tape.start(); position < tape.end(); position++) {
+                    hash += tape.get(position) * weight(position);
+                }
+                snapshot = -1;
+                interval = 1;
+            }
+            var head = tape.head();
+            last = step;
+            previousHead = head;
+            previousSymbol = symbol(tape, head);
+            
+            if (snapshot != -1 && state == snapshotState && head == snapshotHead && hash == snapshotHash && same(tape)) {
+                return new Verdict(Verdict.Kind.CYCLE, true, snapshot, step - snapshot, 0, String.format(
+                    "configuration at step %d (state %d, position %d) repeats at step %d, period %d",
+                    snapshot, state, head, step, step - snapshot));
+            }
+            if (snapshot == -1 || step - snapshot >= interval) {
+                if (snapshot != -1) {
+                    interval *= 2;
+                }
+                snapshot = step;
+                snapshotState = state;
+                snapshotHead = head;
+                snapshotHash = hash;
+                snapshotStart = tape.start();
+                snapshotCells = cells(tape, tape.start(), tape.end());
+            }
+            return null;
+        }
+        
+        private boolean same(Tape tape) {
+            var from = Math.min(tape.start(), snapshotStart);
+            var to = Math.max(tape.end(), snapshotStart + snapshotCells.length);
+            for (var position = from; position < to; position++) {
+                var offset = position - snapshotStart;
+                var cell = 0 <= offset && offset < snapshotCells.length ? snapshotCells[(int) offset] : 0;
+                if (symbol(tape, position) != cell)
+                    return false;
+            }
+            return true;
+        }
+        
+        private static long weight(long position) {
+            // splitmix64 finalizer
+            var z = position * 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    /**
+     * If at two record positions r1 < r2, with only blanks to the right, the state is the same and the
+     * cells from the lowest head position m in between up to r1 equal the cells from m+(r2-r1) to r2,
+     * then the run from r2 repeats the run from r1 shifted right, forever.
+     */
+    private static final class TranslatedCyclers implements Decider {
+        
+        private final int window;
+        private final int history;
+        private final ArrayDeque<Record> records = new ArrayDeque<>();
+        private long record = Long.MIN_VALUE;
+        private long low = Long.MAX_VALUE;
+        
+        TranslatedCyclers(int window, int history) {
+            this.window = window;
+            this.history = history;
+        }
+        
+        @Override
+        public long next(long step) {
+            return step + 1;
+        }
+        
+        @Override
+        public Verdict check(long step, int state, Tape tape) {
+            var head = tape.head();
+            low = Math.min(low, head);
+            if (head <= record)
+                return null;
+            record = head;
+            if (head < tape.end() - 1)
+                return null;
+            
+            var last = records.peekLast();
+            if (last != null) {
+                last.low = low;
+            }
+            var min = Long.MAX_VALUE;
+            for (var iterator = records.descendingIterator(); iterator.hasNext(); ) {
+                var r = iterator.next();
+                min = Math.min(min, r.low);
+                if (r.state != state || r.head - min > window)
+                    continue;
+                var shift = head - r.head;
+                var match = true;
+                for (var position = min; position <= r.head && match; position++) {
+                    match = r.cells[(int) (position - r.from)] == symbol(tape, position + shift);
+                }
+                if (match) {
+                    return new Verdict(Verdict.Kind.TRANSLATED_CYCLE, true, r.step, step - r.step, shift, String.format(
+                        "state %d at record position %d, step %d repeats %d cells to the right at step %d, period %d",
+                        state, r.head, r.step, shift, step, step - r.step));
+                }
+            }
+            
+            var from = Math.max(tape.start(), head - window);
+            records.add(new Record(step, state, head, from, cells(tape, from, head + 1)));
+            if (records.size() > history) {
+                records.remove();
+            }
+            low = head;
+            return null;
+        }
+        
+        private static final class Record {
+            final long step;
+            final int state;
+            final long head;
+            final long from;
+            final byte[] cells;
+            long low;
+            
+            Record(long step, int state, long head, long from, byte[] cells) {
+                this.step = step;
+                this.state = state;
+                this.head = head;
+                this.from = from;
+                this.cells = cells;
+                low = head;
+            }
+        }
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    /**
+     * A bounce is a new record position, with only blanks to the right, after the head went back
+     * at least halfway to the start. For each state the last bounces are kept; if the tape of each
+     * one is the previous tape with the same unit inserted, and the steps between them grow by the
+     * same amount, the machine is taken as a bouncer.
+     */
+    private static final class Bouncers implements Decider {
+        
+        private final int repeats;
+        private final HashMap<Integer, ArrayDeque<Bounce>> bounces = new HashMap<>();
+        private long record = Long.MIN_VALUE;
+        private long low = Long.MAX_VALUE;
+        
+        Bouncers(int repeats) {
+            this.repeats = repeats;
+        }
+        
+        @Override
+        public long next(long step) {
+            return step + 1;
+        }
+        
+        @Override
+        public Verdict check(long step, int state, Tape tape) {
+            var head = tape.head();
+            low = Math.min(low, head);
+            if (head <= record)
+                return null;
+            var previous = record;
+            record = head;
+            if (head < tape.end() - 1)
+                return null;
+            var bounced = previous != Long.MIN_VALUE && low - tape.start() <= (previous - tape.start()) / 2;
+            low = head;
+            if (!bounced)
+                return null;
+            
+            var list = bounces.computeIfAbsent(state, s -> new ArrayDeque<>());
+            list.add(new Bounce(step, cells(tape, tape.start(), head + 1)));
+            if (list.size() > repeats) {
+                list.remove();
+            }
+            if (list.size() < repeats)
+                return null;
+            
+            var array = list.toArray(new Bounce[repeats]);
+            byte[] unit = null;
+            for (var i = 1; i < repeats; i++) {
+                var inserted = inserted(array[i-1].cells, array[i].cells);
+                if (inserted == null || (unit != null && !Arrays.equals(unit, inserted)))
+                    return null;
+                unit = inserted;
+            }
+            var growth = (array[2].step - array[1].step) - (array[1].step - array[0].step);
+            if (growth <= 0)
+                return null;
+            for (var i = 3; i < repeats; i++) {
+                if ((array[i].step - array[i-1].step) - (array[i-1].step - array[i-2].step) != growth)
+                    return null;
+            }
+            var first = array[0];
+            return new Verdict(Verdict.Kind.BOUNCER, false, first.step, step - array[repeats-2].step, unit.length, String.format(
+                "state %d bounces at steps %d..%d, the tape grows by \"%s\" and each bounce takes %d steps more",
+                state, first.step, step, text(tape, unit), growth));
+        }
+        
+        /** Returns the unit inserted into {@code before} to get {@code after}, or {@code null}. */
+        private static byte[] inserted(byte[] before, byte[] after) {
+            var length = after.length - before.length;
+            if (length <= 0)
+                return null;
+            var prefix = 0;
+            while (prefix < before.length && before[prefix] == after[prefix]) {
+                prefix += 1;
+            }
+            for (var i = prefix; i < before.length; i++) {
+                if (before[i] != after[i + length])
+                    return null;
+            }
+            return Arrays.copyOfRange(after, prefix, prefix + length);
+        }
+        
+        private static final class Bounce {
+            final long step;
+            final byte[] cells;
+            
+            Bounce(long step, byte[] cells) {
+                this.step = step;
+                this.cells = cells;
+            }
+        }
+    }
+}
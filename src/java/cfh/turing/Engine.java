@@ -0,0 +1,18 @@
+package cfh.turing;
+
+public interface Engine {
+
+    public Table table();
+    
+    public void load(String text) throws RunException;
+    
+    public Result run(long maxSteps) throws RunException;
+    
+    public Tape tape();
+    
+    public int state();
+    
+    public long steps();
+    
+    public boolean halted();
+}
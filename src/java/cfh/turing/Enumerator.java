@@ -0,0 +1,389 @@
+package cfh.turing;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Enumerates all programs with up to {@code n} states over the default alphabet, busy beaver style.
+ *
+ * Programs are built lazily: a partial program is run until it needs an undefined transition,
+ * which is then filled with every possible alternative. New target states are only introduced in
+ * order of first use, so programs that differ just by a renaming of states are generated once.
+ * The search tree is split into tasks run on a thread pool; every finished task is appended to a
+ * progress file so an interrupted search can be resumed. Runs are stopped early when the
+ * {@link Deciders#proven() proven deciders} find that they never halt.
+ */
+public class Enumerator {
+    
+    private static final String USAGE = "usage: Enumerator [-states <n>] [-steps <max>] [-threads <count>] "
+        + "[-tasks <count>] [-top <count>] <result file>";
+    
+    private static final char[] WRITE = { Alphabet.BLANK, '0', '1' };
+    private static final Command[] MOVE = { Command.LEFT, Command.RIGHT, Command.NOP };
+    private static final int UNDEFINED = -1;
+    
+    public static void main(String[] args) {
+        var enumerator = new Enumerator();
+        var index = 0;
+        Path result;
+        try {
+            for (; index < args.length && args[index].startsWith("-"); index++) {
+                switch (args[index]) {
+                    case "-states": enumerator.states = Integer.parseInt(args[++index]); break;
+                    case "-steps": enumerator.maxSteps = Long.parseLong(args[++index]); break;
+                    case "-threads": enumerator.threads = Integer.parseInt(args[++index]); break;
+                    case "-tasks": enumerator.tasks = Integer.parseInt(args[++index]); break;
+                    case "-top": enumerator.top = Integer.parseInt(args[++index]); break;
+                    default: throw new IllegalArgumentException("unrecognized option " + args[index]);
+                }
+            }
+            if (enumerator.states < 1 || enumerator.maxSteps < 1 || enumerator.threads < 1 || enumerator.tasks < 1 || enumerator.top < 1)
+                throw new IllegalArgumentException("invalid option value");
+            if (index != args.length - 1)
+                throw new IllegalArgumentException("missing result file");
+            result = Paths.get(args[index]);
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        try {
+            enumerator.run(result, Paths.get(result + ".progress"));
+        } catch (IOException | ExecutionException ex) {
+            System.err.println(ex);
+            System.exit(1);
+        } catch (InterruptedException ex) {
+            System.err.println("interrupted, resume with the same arguments");
+            System.exit(1);
+        }
+    }
+    
+    private int states = 2;
+    private long maxSteps = 1_000_000;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int tasks = 1000;
+    private int top = 100;
+    
+    private final Alphabet alphabet = Alphabet.DEFAULT;
+    private final int symbols = alphabet.size();
+    
+    private Enumerator() {
+    }
+    
+    private void run(Path result, Path progress) throws IOException, InterruptedException, ExecutionException {
+        var start = System.nanoTime();
+        var nodes = split();
+        var header = String.format("# states %d, steps %d, tasks %d", states, maxSteps, nodes.size());
+        
+        var total = new Stats(top);
+        var done = new BitSet(nodes.size());
+        if (Files.exists(progress)) {
+            resume(progress, header, nodes.size(), done, total);
+            System.err.printf("resuming, %d of %d tasks done%n", done.cardinality(), nodes.size());
+        } else {
+            Files.writeString(progress, header + System.lineSeparator());
+        }
+        
+        var executor = Executors.newFixedThreadPool(threads);
+        try (var out = new PrintWriter(Files.newBufferedWriter(progress, StandardOpenOption.APPEND))) {
+            var futures = new ArrayList<Future<?>>();
+            for (var i = 0; i < nodes.size(); i++) {
+                if (done.get(i))
+                    continue;
+                var task = i;
+                var node = nodes.get(i);
+                futures.add(executor.submit(() -> {
+                    var stats = new Stats(top);
+                    search(node, stats);
+                    synchronized (out) {
+                        // the task line commits the champions before it, a block cut off without it is redone
+                        for (var champion : stats.champions) {
+                            out.printf("champion %d %d %s%n", champion.steps, champion.size, champion.program);
+                        }
+                        out.printf("task %d %d %d %d %d%n", task, stats.programs, stats.halted, stats.decided, stats.holdouts);
+                        out.flush();
+                        total.merge(stats);
+                    }
+                    return null;
+                }));
+            }
+            for (var future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        
+        var champions = new ArrayList<>(total.champions);
+        champions.sort(null);
+        try (var out = new PrintWriter(new BufferedWriter(Files.newBufferedWriter(result)))) {
+            out.println(header);
+            out.printf("# %d programs, %d halted, %d never halt, %d undecided after %d steps%n",
+                total.programs, total.halted, total.decided, total.holdouts, maxSteps);
+            out.println("# rank steps size program");
+            for (var i = 0; i < champions.size(); i++) {
+                var champion = champions.get(i);
+                out.printf("%d %d %d %s%n", i+1, champion.steps, champion.size, champion.program);
+            }
+        }
+        System.err.printf("%d programs, %d halted, %d never halt, %d undecided in %.3f s%n",
+            total.programs, total.halted, total.decided, total.holdouts, (System.nanoTime() - start) / 1e9);
+    }
+    
+    /**
+     * Reads the tasks done and their champions from the progress file. Each task is a block of
+     * champion lines ended by its task line; reading stops at the first line not ended by a newline
+     * or not parsed, left by an interrupted write, and the file is truncated after the last complete
+     * block so new blocks are appended to it.
+     */
+    private void resume(Path progress, String header, int count, BitSet done, Stats total) throws IOException {
+        var bytes = Files.readAllBytes(progress);
+        var pending = new ArrayList<Champion>();
+        var committed = -1;
+        var first = true;
+        for (var start = 0; start < bytes.length; ) {
+            var end = start;
+            while (end < bytes.length && bytes[end] != '\n') {
+                end += 1;
+            }
+            if (end == bytes.length)
+                break;
+            var line = new String(bytes, start, end - start, StandardCharsets.UTF_8).stripTrailing();
+            start = end + 1;
+            if (first) {
+                if (!line.equals(header))
+                    throw new IOException(progress + ": progress file of a different search, expected \"" + header + "\"");
+                first = false;
+                committed = start;
+                continue;
+            }
+            var fields = line.split(" ", 6);
+            try {
+                if (fields[0].equals("champion") && fields.length >= 4) {
+                    fields = line.split(" ", 4);
+                    pending.add(new Champion(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]));
+                } else if (fields[0].equals("task") && fields.length == 6) {
+                    var task = Integer.parseInt(fields[1]);
+                    if (task < 0 || task >= count)
+                        break;
+                    var programs = Long.parseLong(fields[2]);
+                    var halted = Long.parseLong(fields[3]);
+                    var decided = Long.parseLong(fields[4]);
+                    var holdouts = Long.parseLong(fields[5]);
+                    if (!done.get(task)) {
+                        done.set(task);
+                        total.programs += programs;
+                        total.halted += halted;
+                        total.decided += decided;
+                        total.holdouts += holdouts;
+                        pending.forEach(total::add);
+                    }
+                    pending.clear();
+                    committed = start;
+                } else {
+                    break;
+                }
+            } catch (NumberFormatException ex) {
+                break;
+            }
+        }
+        if (committed == -1) {
+            // interrupted writing the header
+            if (bytes.length > 0) {
+                System.err.printf("discarding %d bytes of an interrupted write%n", bytes.length);
+            }
+            Files.writeString(progress, header + System.lineSeparator());
+        } else if (committed < bytes.length) {
+            System.err.printf("discarding %d bytes of an interrupted write%n", bytes.length - committed);
+            try (var channel = FileChannel.open(progress, StandardOpenOption.WRITE)) {
+                channel.truncate(committed);
+            }
+        }
+    }
+    
+    /** Expands the search tree breadth first until there are enough independent subtrees. */
+    private List<int[]> split() {
+        var queue = new ArrayDeque<int[]>();
+        var root = new int[states * symbols];
+        Arrays.fill(root, UNDEFINED);
+        queue.add(root);
+        var leaves = new ArrayList<int[]>();
+        while (!queue.isEmpty() && queue.size() + leaves.size() < tasks) {
+            var node = queue.remove();
+            var children = children(node, new Stats(1));
+            if (children.isEmpty()) {
+                leaves.add(node);
+            } else {
+                queue.addAll(children);
+            }
+        }
+        leaves.addAll(queue);
+        return leaves;
+    }
+    
+    private void search(int[] node, Stats stats) {
+        for (var child : children(node, stats)) {
+            search(child, stats);
+        }
+    }
+    
+    /** Runs the partial program and returns its extensions if it needs an undefined transition. */
+    private List<int[]> children(int[] node, Stats stats) {
+        var used = 0;
+        for (var transition : node) {
+            if (transition != UNDEFINED && command(transition) != Command.HALT) {
+                used = Math.max(used, target(transition));
+            }
+        }
+        var program = program(node, used + 1);
+        var machine = new Machine(Table.compile(program));
+        machine.decider(Deciders.proven());
+        try {
+            machine.load("*");
+            var result = machine.run(maxSteps);
+            stats.programs += 1;
+            if (result.reason == Result.Reason.HALTED) {
+                stats.halted += 1;
+                stats.add(new Champion(result.steps, result.tape.end() - result.tape.start(),
+                    program.toString().replaceAll("\\s+", " ")));
+            } else if (result.reason == Result.Reason.NON_HALTING) {
+                stats.decided += 1;
+            } else {
+                stats.holdouts += 1;
+            }
+            return List.of();
+        } catch (StateException ex) {
+            var state = machine.state();
+            var symbol = machine.tape().read();
+            var expected = alphabet.symbol(symbol);
+            var limit = Math.min(used + 1, states - 1);
+            var children = new ArrayList<int[]>();
+            for (var replace : expected == '*' ? new char[] { '*' } : WRITE) {
+                var code = alphabet.code(replace);
+                children.add(define(node, state, symbol, code, Command.HALT, 0));
+                for (var command : MOVE) {
+                    if (expected == '*' && command == Command.LEFT)
+                        continue;
+                    for (var target = 0; target <= limit; target++) {
+                        if (command == Command.NOP && target == state && code == symbol)
+                            continue;
+                        children.add(define(node, state, symbol, code, command, target));
+                    }
+                }
+            }
+            return children;
+        } catch (RunException ex) {
+            stats.programs += 1;
+            return List.of();
+        }
+    }
+    
+    private int[] define(int[] node, int state, int symbol, int replace, Command command, int target) {
+        var child = node.clone();
+        child[state * symbols + symbol] = target << 4 | command.ordinal() << 2 | replace;
+        return child;
+    }
+    
+    private Program program(int[] node, int count) {
+        var builder = new Program.Builder();
+        for (var state = 0; state < count; state++) {
+            builder.state(-1);
+            for (var symbol = 0; symbol < symbols; symbol++) {
+                var transition = node[state * symbols + symbol];
+                if (transition != UNDEFINED) {
+                    var command = command(transition);
+                    var jump = command == Command.HALT ? 0 : target(transition) - state;
+                    builder.alternative(-1, -1, alphabet.symbol(symbol), alphabet.symbol(transition & 3), command, jump, null);
+                }
+            }
+            builder.end(-1);
+        }
+        try {
+            return builder.build(new Position(-1));
+        } catch (ParseException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+    
+    private static Command command(int transition) {
+        return Command.values()[transition >> 2 & 3];
+    }
+    
+    private static int target(int transition) {
+        return transition >> 4;
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    private static final class Stats {
+        
+        final int top;
+        final PriorityQueue<Champion> champions = new PriorityQueue<>((a, b) -> b.compareTo(a));
+        long programs;
+        long halted;
+        long decided;
+        long holdouts;
+        
+        Stats(int top) {
+            this.top = top;
+        }
+        
+        void add(Champion champion) {
+            champions.add(champion);
+            if (champions.size() > top) {
+                champions.remove();
+            }
+        }
+        
+        void merge(Stats stats) {
+            programs += stats.programs;
+            halted += stats.halted;
+            decided += stats.decided;
+            holdouts += stats.holdouts;
+            stats.champions.forEach(this::add);
+        }
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    private static final class Champion implements Comparable<Champion> {
+        
+        final long steps;
+        final long size;
+        final String program;
+        
+        Champion(long steps, long size, String program) {
+            this.steps = steps;
+            this.size = size;
+            this.program = program;
+        }
+        
+        /** Best first: more steps, then larger tape. */
+        @Override
+        public int compareTo(Champion other) {
+            if (steps != other.steps)
+                return Long.compare(other.steps, steps);
+            if (size != other.size)
+                return Long.compare(other.size, size);
+            return program.compareTo(other.program);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package cfh.turing;
+
+import static java.util.Objects.*;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Highlighter;
+import javax.swing.text.JTextComponent;
+
+/**
+ * Colours each alternative of the program text by how often it was executed in a profiled run, on a
+ * logarithmic scale from pale yellow for a few hits to red for the most executed one. The colours
+ * are highlights of the text component, they must be cleared when the text changes.
+ */
+public class HeatMap {
+    
+    private static final int LEVELS = 8;
+    private static final Color COLD = new Color(255, 250, 200);
+    private static final Color HOT = new Color(255, 90, 60);
+    
+    private final JTextComponent programPane;
+    private final Highlighter.HighlightPainter[] painters = new Highlighter.HighlightPainter[LEVELS];
+    private final List<Object> highlights = new ArrayList<>();
+    
+    HeatMap(JTextComponent programPane) {
+        this.programPane = requireNonNull(programPane);
+        for (var level = 0; level < LEVELS; level++) {
+            var f = level / (LEVELS - 1.0);
+            var color = new Color(
+                (int) Math.round(COLD.getRed() + f * (HOT.getRed() - COLD.getRed())),
+                (int) Math.round(COLD.getGreen() + f * (HOT.getGreen() - COLD.getGreen())),
+                (int) Math.round(COLD.getBlue() + f * (HOT.getBlue() - COLD.getBlue())));
+            painters[level] = new DefaultHighlighter.DefaultHighlightPainter(color);
+        }
+    }
+    
+    /** Shows the counts of {@code profile}, whose program must be the one in the text component. */
+    void show(Profile profile) {
+        clear();
+        var program = profile.table().program;
+        var max = 0L;
+        for (var state = 0; state < program.stateCount(); state++) {
+            for (var alternative = 0; alternative < program.first(state+1) - program.first(state); alternative++) {
+                max = Math.max(max, profile.alternativeHits(state, alternative));
+            }
+        }
+        if (max == 0)
+            return;
+        var length = programPane.getDocument().getLength();
+        var highlighter = programPane.getHighlighter();
+        try {
+            for (var state = 0; state < program.stateCount(); state++) {
+                var first = program.first(state);
+                for (var alternative = 0; alternative < program.first(state+1) - first; alternative++) {
+                    var hits = profile.alternativeHits(state, alternative);
+                    var start = program.start(first + alternative);
+                    var end = program.end(first + alternative);
+                    if (hits == 0 || start < 0 || end > length)
+                        continue;
+                    highlights.add(highlighter.addHighlight(start, end, painters[level(hits, max)]));
+                }
+            }
+        } catch (BadLocationException ex) {
+            clear();
+        }
+    }
+    
+    void clear() {
+        var highlighter = programPane.getHighlighter();
+        for (var highlight : highlights) {
+            highlighter.removeHighlight(highlight);
+        }
+        highlights.clear();
+    }
+    
+    private static int level(long hits, long max) {
+        if (max == 1)
+            return LEVELS - 1;
+        var level = (int) (LEVELS * Math.log(hits) / Math.log(max));
+        return Math.max(0, Math.min(LEVELS - 1, level));
+    }
+}
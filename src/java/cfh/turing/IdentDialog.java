@@ -23,6 +23,7 @@ public class IdentDialog extends JDialog {
 
     private final Program program;
     private final JTextComponent textComponent;
+    private final Profile profile;
 
     private int state;
     private int alternative;
@@ -30,11 +31,13 @@ public class IdentDialog extends JDialog {
     private JTextArea elementField;
     private TitledBorder elementBorder;
 
-    IdentDialog(JFrame parent, Program program, JTextComponent textComponent) {
+    /** With the hit counts of {@code profile} if not {@code null} and for the same program. */
+    IdentDialog(JFrame parent, Program program, JTextComponent textComponent, Profile profile) {
         super(parent);
         
         this.program = requireNonNull(program);
         this.textComponent = requireNonNull(textComponent);
+        this.profile = profile != null && profile.table().program == program ? profile : null;
         
         state = -1;
         alternative = -1;
@@ -50,11 +53,14 @@ public class IdentDialog extends JDialog {
         
         var prev = newJButton("Prev", "show previous element", this::doPrev);
         var next = newJButton("Mext", "show next element", this::doNext);
+        var hottest = newJButton("Hottest", "show the most executed alternative of the profiled run", this::doHottest);
+        hottest.setEnabled(this.profile != null);
         
         var buttons = Box.createHorizontalBox();
         buttons.add(Box.createHorizontalGlue());
         buttons.add(prev);
         buttons.add(next);
+        buttons.add(hottest);
         buttons.add(Box.createHorizontalGlue());
         
         var panel = new JPanel();
@@ -72,16 +78,32 @@ public class IdentDialog extends JDialog {
     
     private void update() {
         Positionable element;
+        String title;
+        long hits = 0;
         if (state == -1) {
             element = program;
-            elementBorder.setTitle("Program");
+            title = "Program";
+            if (profile != null) {
+                hits = profile.steps();
+            }
         } else if (alternative == -1) {
             element = program.state(state);
-            elementBorder.setTitle("State " + state);
+            title = "State " + state;
+            if (profile != null) {
+                hits = profile.hits(state);
+            }
         } else {
             element = program.state(state).alternative(alternative);
-            elementBorder.setTitle("State " + state + ", Alternative " + alternative);
+            title = "State " + state + ", Alternative " + alternative;
+            if (profile != null) {
+                hits = profile.alternativeHits(state, alternative);
+            }
         }
+        if (profile != null) {
+            var steps = profile.steps();
+            title += String.format(" - %,d hits, %.2f%% of %,d steps", hits, steps == 0 ? 0.0 : hits * 100.0 / steps, steps);
+        }
+        elementBorder.setTitle(title);
         elementField.setText(element.toString());
         repaint();
         var pos = element.position();
@@ -111,6 +133,21 @@ public class IdentDialog extends JDialog {
         update();
     }
     
+    private void doHottest(ActionEvent ev) {
+        var max = -1L;
+        for (var s = 0; s < program.stateCount(); s++) {
+            for (var a = 0; a < program.state(s).alternativesCount(); a++) {
+                var hits = profile.alternativeHits(s, a);
+                if (hits > max) {
+                    max = hits;
+                    state = s;
+                    alternative = a;
+                }
+            }
+        }
+        update();
+    }
+    
     private JButton newJButton(String title, String tooltip, ActionListener listener) {
         var button = new JButton(title);
         button.setToolTipText(tooltip);
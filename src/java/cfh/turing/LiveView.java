@@ -0,0 +1,126 @@
+package cfh.turing;
+
+import static java.util.Objects.*;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GridLayout;
+import java.util.NoSuchElementException;
+import javax.swing.BorderFactory;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.Timer;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.JTextComponent;
+
+/**
+ * Shows a running engine: {@link #FRAME_RATE} times a second the last {@link Monitor.Snapshot} is read
+ * and shown, and the alternative about to be executed is highlighted in the program text. Only the
+ * event dispatch thread reads the snapshots, the engine is never slowed down by painting.
+ */
+@SuppressWarnings("serial")
+public class LiveView extends JPanel {
+    
+    public static final int FRAME_RATE = 30;
+    
+    private static final Font FONT = new Font("monospaced", Font.PLAIN, 12);
+    private static final Color HIGHLIGHT = new Color(255, 200, 0);
+    
+    private final JTextComponent programPane;
+    private final JTextField status;
+    private final JTextField cells;
+    private final Timer timer;
+    
+    private Monitor monitor = null;
+    private Program program = null;
+    private Object highlight = null;
+    
+    LiveView(JTextComponent programPane) {
+        super(new GridLayout(2, 1));
+        this.programPane = requireNonNull(programPane);
+        status = newField("steps, state, head position and speed of the running program");
+        cells = newField("cells around the head, the head in brackets");
+        add(status);
+        add(cells);
+        timer = new Timer(1000 / FRAME_RATE, e -> update());
+    }
+    
+    private JTextField newField(String tooltip) {
+        var field = new JTextField();
+        field.setFont(FONT);
+        field.setEditable(false);
+        field.setBorder(BorderFactory.createEtchedBorder());
+        field.setToolTipText(tooltip);
+        return field;
+    }
+    
+    /** Starts showing the snapshots of {@code monitor}, taken from a run of {@code program}. */
+    void start(Monitor monitor, Program program) {
+        this.monitor = requireNonNull(monitor);
+        this.program = requireNonNull(program);
+        status.setText("starting");
+        cells.setText("");
+        timer.start();
+    }
+    
+    /** Shows the last snapshot and stops polling. */
+    void stop() {
+        timer.stop();
+        if (monitor != null) {
+            update();
+        }
+        unhighlight();
+        monitor = null;
+        program = null;
+    }
+    
+    /** Shows {@code text} instead of the counters, after the run stopped. */
+    void message(String text) {
+        status.setText(text);
+    }
+    
+    private void update() {
+        var snapshot = monitor.snapshot();
+        if (snapshot == null)
+            return;
+        status.setText(String.format("step %,d   state %d   head %,d   %,.0f steps/s",
+            snapshot.steps, snapshot.state, snapshot.head, snapshot.rate));
+        cells.setText(snapshot.cells());
+        cells.setCaretPosition(Math.min(cells.getDocument().getLength(), (int) (snapshot.head - snapshot.from)));
+        highlight(snapshot);
+    }
+    
+    private void highlight(Monitor.Snapshot snapshot) {
+        Alternative alternative;
+        try {
+            alternative = program.state(snapshot.state).alternativeFor(snapshot.alphabet.symbol(snapshot.symbol()));
+        } catch (NoSuchElementException ex) {
+            unhighlight();
+            return;
+        }
+        var position = alternative.position();
+        var length = programPane.getDocument().getLength();
+        if (position.start() < 0 || position.end() > length) {
+            unhighlight();
+            return;
+        }
+        try {
+            if (highlight == null) {
+                highlight = programPane.getHighlighter().addHighlight(position.start(), position.end(),
+                    new DefaultHighlighter.DefaultHighlightPainter(HIGHLIGHT));
+            } else {
+                programPane.getHighlighter().changeHighlight(highlight, position.start(), position.end());
+            }
+        } catch (BadLocationException ex) {
+            unhighlight();
+        }
+    }
+    
+    private void unhighlight() {
+        if (highlight != null) {
+            programPane.getHighlighter().removeHighlight(highlight);
+            highlight = null;
+        }
+    }
+}
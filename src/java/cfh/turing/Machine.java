@@ -0,0 +1,264 @@
+package cfh.turing;
+
+import static java.util.Objects.*;
+
+public class Machine implements Engine {
+    
+    private static final long SWEEP_LIMIT = 1L << 20;
+    
+    private final Table table;
+    
+    private Tape tape;
+    private int stateIndex;
+    private long steps;
+    private boolean halted;
+    
+    private Trace trace = null;
+    private Decider decider = null;
+    private Monitor monitor = null;
+    private RunControl control = null;
+    private Profile profile = null;
+    
+    public Machine(Program program) {
+        this(Table.compile(program));
+    }
+    
+    public Machine(Table table) {
+        this.table = requireNonNull(table);
+        table.requireSingleTape();
+        if (table.stateCount() == 0)
+            throw new IllegalArgumentException("empty program");
+        tape = new PackedTape(table.alphabet, "*");
+    }
+    
+    @Override
+    public void load(String text) throws RunException {
+        if (text.isEmpty() || text.charAt(0) != '*')
+            throw new RunException("tape must start with '*'");
+        try {
+            load(new PackedTape(table.alphabet, text));
+        } catch (IllegalArgumentException ex) {
+            throw (RunException) new RunException("invalid tape, %s", ex.getMessage()).initCause(ex);
+        }
+    }
+    
+    public void load(Tape tape) throws RunException {
+        if (!tape.alphabet().equals(table.alphabet))
+            throw new RunException("tape alphabet \"%s\" does not match program alphabet \"%s\"", tape.alphabet(), table.alphabet);
+        if (tape.end() <= tape.start() || tape.get(0) != table.alphabet.code('*'))
+            throw new RunException("tape must start with '*'");
+        tape.head(0);
+        this.tape = tape;
+        stateIndex = 0;
+        steps = 0;
+        halted = false;
+    }
+    
+    void restore(Tape tape, int state, long steps, boolean halted) {
+        this.tape = requireNonNull(tape);
+        this.stateIndex = state;
+        this.steps = steps;
+        this.halted = halted;
+    }
+    
+    public void trace(Trace trace) {
+        this.trace = trace;
+    }
+    
+    public void decider(Decider decider) {
+        this.decider = decider;
+    }
+    
+    public void monitor(Monitor monitor) {
+        this.monitor = monitor;
+    }
+    
+    public void control(RunControl control) {
+        this.control = control;
+    }
+    
+    /** Counts the steps into {@code profile}, which must be for the same table; {@code null} to stop counting. */
+    public void profile(Profile profile) {
+        if (profile != null && profile.table() != table)
+            throw new IllegalArgumentException("profile is for another table");
+        this.profile = profile;
+    }
+    
+    public Program program() {
+        return table.program;
+    }
+    
+    @Override
+    public Table table() {
+        return table;
+    }
+    
+    @Override
+    public Tape tape() {
+        return tape;
+    }
+    
+    public long position() {
+        return tape.head();
+    }
+    
+    @Override
+    public int state() {
+        return stateIndex;
+    }
+    
+    @Override
+    public long steps() {
+        return steps;
+    }
+    
+    @Override
+    public boolean halted() {
+        return halted;
+    }
+    
+    @Override
+    public Result run(long maxSteps) throws RunException {
+        if (halted)
+            return result(Result.Reason.HALTED);
+        
+        final var tape = this.tape;
+        final var symbols = table.symbols;
+        final var replace = table.replace;
+        final var command = table.command;
+        final var next = table.next;
+        final var sweep = table.sweep;
+        final var trace = this.trace;
+        var traced = trace == null ? Long.MAX_VALUE : trace.next(steps) - steps;
+        final var decider = this.decider;
+        var decided = decider == null ? Long.MAX_VALUE : 0L;
+        Verdict verdict = null;
+        final var monitor = this.monitor;
+        var monitored = monitor == null ? Long.MAX_VALUE : 0L;
+        final var control = this.control;
+        final var timeout = control == null ? 0L : control.timeout();
+        final var deadline = timeout == 0 ? Long.MAX_VALUE : System.nanoTime() + timeout * 1_000_000;
+        final var breakState = control == null ? -1 : control.target();
+        final var profile = this.profile;
+        final var hits = profile == null ? null : profile.hits();
+        var polled = 0L;
+        var watched = breakState == -1 ? Long.MAX_VALUE : 1L;
+        // next step the control, the decider or the monitor want to see
+        var checked = Math.min(Math.min(polled, watched), Math.min(decided, monitored));
+        
+        var state = stateIndex;
+        var count = 0L;
+        var reason = Result.Reason.LIMIT;
+        if (profile != null) {
+            profile.start();
+        }
+        try {
+            loop:
+            while (count < maxSteps) {
+                if (count == checked) {
+                    if (count == polled) {
+                        if (Thread.interrupted() || (control != null && control.cancelled())) {
+                            reason = Result.Reason.INTERRUPTED;
+                            break;
+                        }
+                        if (control != null && control.paused()) {
+                            reason = Result.Reason.PAUSED;
+                            break;
+                        }
+                        if (deadline != Long.MAX_VALUE && System.nanoTime() >= deadline) {
+                            reason = Result.Reason.TIMEOUT;
+                            break;
+                        }
+                        if (profile != null) {
+                            profile.sample(steps+count, tape);
+                        }
+                        polled = count + RunControl.POLL;
+                    }
+                    if (count == watched) {
+                        if (state == breakState) {
+                            reason = Result.Reason.BREAKPOINT;
+                            break;
+                        }
+                        watched = count + 1;
+                    }
+                    if (count == monitored) {
+                        monitored = monitor.sample(steps+count, state, tape) - steps;
+                    }
+                    if (count == decided) {
+                        verdict = decider.check(steps+count, state, tape);
+                        if (verdict != null) {
+                            reason = Result.Reason.NON_HALTING;
+                            break;
+                        }
+                        decided = decider.next(steps+count) - steps;
+                    }
+                    checked = Math.min(Math.min(polled, watched), Math.min(decided, monitored));
+                }
+                
+                var symbol = tape.read();
+                var index = state * symbols + symbol;
+                var cmd = command[index];
+                if (cmd == Table.MISSING) 
+                    throw table.missing(state, table.alphabet.symbol(symbol), tape.head());
+                
+                if (cmd >= Table.SWEEP_LEFT && hits == null) {
+                    var limit = Math.min(Math.min(maxSteps - count, SWEEP_LIMIT), Math.min(traced - count - 1, checked - count));
+                    var moved = cmd == Table.SWEEP_RIGHT 
+                        ? tape.scanRight(sweep[state], limit) 
+                        : tape.scanLeft(sweep[state], Math.min(limit, tape.head()));
+                    if (moved > 0) {
+                        count += moved;
+                        continue;
+                    }
+                }
+                tape.write(replace[index]);
+                count += 1;
+                if (hits != null) {
+                    hits[index] += 1;
+                }
+                if (count == traced) {
+                    trace.record(steps+count, state, table.alternative[index], tape.head());
+                    traced = trace.next(steps+count) - steps;
+                }
+                switch (cmd) {
+                    case Table.HALT:
+                        halted = true;
+                        reason = Result.Reason.HALTED;
+                        break loop;
+                    case Table.NOP:
+                        break;
+                    case Table.LEFT:
+                    case Table.SWEEP_LEFT:
+                        if (tape.head() == 0) 
+                            throw new AlternativeException(table.alternative(state, symbol), "moving left of start");
+                        tape.left();
+                        break;
+                    case Table.RIGHT:
+                    case Table.SWEEP_RIGHT:
+                        tape.right();
+                        break;
+                    default:
+                        throw new AlternativeException(table.alternative(state, symbol), "unhandled command %d", cmd);
+                }
+                var target = next[index];
+                if (target == Table.INVALID)
+                    throw table.invalid(state, symbol, tape.head());
+                state = target;
+            }
+        } finally {
+            stateIndex = state;
+            steps += count;
+            if (profile != null) {
+                profile.stop(steps, tape);
+            }
+            if (monitor != null) {
+                monitor.sample(steps, state, tape);
+            }
+        }
+        return new Result(reason, steps, stateIndex, tape, verdict);
+    }
+    
+    private Result result(Result.Reason reason) {
+        return new Result(reason, steps, stateIndex, tape);
+    }
+}
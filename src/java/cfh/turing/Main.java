@@ -1,6 +1,5 @@
 package cfh.turing;
 
-import static java.util.Objects.*;
 import static java.nio.file.StandardOpenOption.*;
 import static java.awt.GridBagConstraints.*;
 import static javax.swing.JOptionPane.*;
@@ -21,11 +20,13 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.CharBuffer;
 import java.nio.file.Files;
+import java.nio.file.OpenOption;
 import java.text.ParseException;
 import java.util.Arrays;
-import java.util.List;
-import java.util.NoSuchElementException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 import java.util.prefs.Preferences;
 
 import javax.swing.AbstractAction;
@@ -33,16 +34,21 @@ import javax.swing.Action;
 import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
+import javax.swing.JTabbedPane;
+import javax.swing.JTextArea;
 import javax.swing.JTextField;
 import javax.swing.JTextPane;
 import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.border.TitledBorder;
 import javax.swing.event.CaretEvent;
 import javax.swing.event.CaretListener;
@@ -62,17 +68,39 @@ public class Main {
     private static final Color NORMAL_SELECT = Color.GRAY.brighter();
     private static final Color ERROR_SELECT = Color.RED;
     
+    private static final int DECODE_DELAY = 200;
+    private static final int OUTPUT_LIMIT = 1 << 16;
+    private static final int EDIT_LIMIT = 1 << 20;
+    
     private static final String PREF_PROG_FILE = "program.file";
     private static final String PREF_TAPE_FILE = "tape.file";
     private static final String PREF_CODE = "code";
     private static final String PREF_TAPE = "tape";
+    private static final String PREF_TRACE = "trace";
+    private static final String PREF_DECIDE = "decide";
+    private static final String PREF_BOUNCERS = "decide.bouncers";
+    private static final String PREF_PROFILE = "profile";
+    private static final String PREF_STEP_BUDGET = "budget.steps";
+    private static final String PREF_TIME_BUDGET = "budget.time";
     private final Preferences preferences = Preferences.userNodeForPackage(getClass());
     
     
     private JFrame frame;
     private JTextPane programPane;
     private JTextPane tapePane;
+    private TapeView resultView;
+    private JTabbedPane tapeTabs;
     private JTextField output;
+    private LiveView liveView;
+    private HeatMap heatMap;
+    private JComboBox<String> traceLevel;
+    private JCheckBox decide;
+    private JCheckBox bouncers;
+    private JCheckBox profiled;
+    private JTextField stepBudget;
+    private JTextField timeBudget;
+    private JTextField stepCount;
+    private JTextField targetState;
     
     private JTextField line;
     private JTextField column;
@@ -83,11 +111,41 @@ public class Main {
     private Action parseAction;
     private Action identAction;
     private Action startAction;
+    private Action pauseAction;
+    private Action resumeAction;
+    private Action stepAction;
+    private Action runToAction;
+    private Action cancelAction;
+    private Action metricsAction;
     private Action readAction;
     private Action writeAction;
     
     private Program program = null;
     
+    // the run in progress or paused, null if there is none
+    private Machine machine = null;
+    private boolean running = false;
+    private String level;
+    private long maxSteps;
+    private final RunControl control = new RunControl();
+    // counters of the last run started with profiling, kept after it ended
+    private Profile profile = null;
+    // last successfully parsed program and the range edited since, for incremental parsing
+    private Program parsed = null;
+    private final Edit programEdit = new Edit();
+    
+    // output decoding: edits since the last decode, debounced and run on a background thread
+    private final TapeDecoder decoder = new TapeDecoder();
+    private final Edit tapeEdit = new Edit();
+    private final ExecutorService decoding = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "decoder");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Timer decodeTimer;
+    private boolean decoded = false;
+    private int decodeCount = 0;
+    
     
     private Main() {
         SwingUtilities.invokeLater(this::initGUI);
@@ -95,15 +153,18 @@ public class Main {
     
     private void initGUI() {
         programPane = newJTextPane();
+        heatMap = new HeatMap(programPane);
         var code = preferences.get(PREF_CODE, "");
         programPane.setText(code);
         programPane.getDocument().addDocumentListener(new DocumentListener() {
             @Override
             public void removeUpdate(DocumentEvent e) {
+                programEdit.add(e.getOffset(), -e.getLength());
                 resetProgram();
             }
             @Override
             public void insertUpdate(DocumentEvent e) {
+                programEdit.add(e.getOffset(), e.getLength());
                 resetProgram();
             }
             @Override
@@ -124,9 +185,15 @@ public class Main {
         
         var tapeScroll = newJScrollPane("Tape", tapePane);
         
+        resultView = new TapeView();
+        resultView.setBorder(new TitledBorder("Result"));
+        tapeTabs = new JTabbedPane();
+        tapeTabs.addTab("Input", tapeScroll);
+        tapeTabs.addTab("Result", resultView);
+        
         JSplitPane split = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT);
         split.setLeftComponent(progScroll);
-        split.setRightComponent(tapeScroll);
+        split.setRightComponent(tapeTabs);
         
         loadAction = newAction("Load", "load program from file (SHIFT to append)", this::doLoad);
         saveAction = newAction("Save", "save program to file (SHIFT to append)", this::doSave);
@@ -134,7 +201,65 @@ public class Main {
         identAction = newAction("Ident", "identify the origram parts", this::doIdent);
         startAction = newAction("Start", "start sprogram", this::doStart);
         readAction = newAction("Read", "read file into tape (SHIFT to append)", this::doRead);
-        writeAction = newAction("Write", "write tape to file (SHIFT append)", this::doWrite);
+        pauseAction = newAction("Pause", "pause the run", this::doPause);
+        resumeAction = newAction("Resume", "resume the paused run", this::doResume);
+        stepAction = newAction("Step", "execute the given number of steps of the paused run", this::doStep);
+        runToAction = newAction("Run to", "resume the paused run until the given state is entered", this::doRunTo);
+        cancelAction = newAction("Cancel", "cancel the run", this::doCancel);
+        metricsAction = newAction("Metrics", "show the counters of the profiled run, also while running", this::doMetrics);
+        writeAction = newAction("Write", "write tape, or result if shown, to file (SHIFT append)", this::doWrite);
+        
+        traceLevel = new JComboBox<>(new String[] { "full", "1000", "off" });
+        traceLevel.setEditable(true);
+        traceLevel.setSelectedItem(preferences.get(PREF_TRACE, "full"));
+        traceLevel.setToolTipText("trace: off, full or every given number of steps");
+        
+        // off by default: any decider limits the sweep shortcut of the machine
+        decide = new JCheckBox("decide", preferences.getBoolean(PREF_DECIDE, false));
+        decide.setToolTipText("stop runs proven to never halt: cycles and translated cyclers, slows down the run");
+        bouncers = new JCheckBox("bouncers", preferences.getBoolean(PREF_BOUNCERS, false));
+        bouncers.setToolTipText("also stop bouncers, a heuristic: such runs very likely, but not provably, never halt");
+        bouncers.setEnabled(decide.isSelected());
+        decide.addActionListener(e -> bouncers.setEnabled(decide.isSelected()));
+        profiled = new JCheckBox("profile", preferences.getBoolean(PREF_PROFILE, false));
+        profiled.setToolTipText("count the steps per state and alternative, slows down the run");
+        var options = Box.createHorizontalBox();
+        options.add(decide);
+        options.add(bouncers);
+        options.add(profiled);
+        
+        stepBudget = newJTextField(8);
+        stepBudget.setText(preferences.get(PREF_STEP_BUDGET, ""));
+        stepBudget.setToolTipText("step budget of a run, empty for none");
+        timeBudget = newJTextField(6);
+        timeBudget.setText(preferences.get(PREF_TIME_BUDGET, ""));
+        timeBudget.setToolTipText("time budget in milliseconds each time the run is started or resumed, empty for none");
+        stepCount = newJTextField(6);
+        stepCount.setText("1");
+        stepCount.setToolTipText("number of steps to execute");
+        targetState = newJTextField(4);
+        targetState.setText("0");
+        targetState.setToolTipText("state index to run to");
+        
+        var runPane = Box.createHorizontalBox();
+        runPane.add(newJButton(pauseAction));
+        runPane.add(newJButton(resumeAction));
+        runPane.add(Box.createHorizontalStrut(8));
+        runPane.add(newJButton(stepAction));
+        runPane.add(stepCount);
+        runPane.add(Box.createHorizontalStrut(8));
+        runPane.add(newJButton(runToAction));
+        runPane.add(targetState);
+        runPane.add(Box.createHorizontalStrut(8));
+        runPane.add(newJButton(cancelAction));
+        runPane.add(Box.createHorizontalStrut(8));
+        runPane.add(newJButton(metricsAction));
+        runPane.add(Box.createHorizontalGlue());
+        runPane.add(newJLabel("Budget: "));
+        runPane.add(stepBudget);
+        runPane.add(newJLabel(" steps "));
+        runPane.add(timeBudget);
+        runPane.add(newJLabel(" ms"));
         
         var controlPane = new JPanel();
         controlPane.setLayout(new GridBagLayout());
@@ -143,59 +268,32 @@ public class Main {
         controlPane.add(newJButton(parseAction), new GridBagConstraints(1, 0, 1, 1, 0.0, 0.0, CENTER,     NONE, new Insets(2, 2, 2, 4), 0, 0));
         controlPane.add(newJButton(identAction), new GridBagConstraints(1, 1, 1, 1, 0.0, 0.0, CENTER,     NONE, new Insets(2, 2, 2, 4), 0, 0));
         controlPane.add(newJButton(startAction), new GridBagConstraints(2, 0, 1, 1, 0.0, 0.0, CENTER,     NONE, new Insets(2, 4, 2, 2), 0, 0));
+        controlPane.add(traceLevel,              new GridBagConstraints(2, 1, 1, 1, 0.0, 0.0, CENTER,     NONE, new Insets(2, 4, 2, 2), 0, 0));
+        controlPane.add(options,                 new GridBagConstraints(2, 2, 1, 1, 0.0, 0.0, CENTER,     NONE, new Insets(2, 4, 2, 2), 0, 0));
         controlPane.add(newJButton(readAction),  new GridBagConstraints(3, 0, 1, 1, 1.0, 0.0, LINE_END,   NONE, new Insets(2, 4, 2, 4), 0, 0));
         controlPane.add(newJButton(writeAction), new GridBagConstraints(3, 1, 1, 1, 1.0, 0.0, LINE_END,   NONE, new Insets(2, 2, 2, 4), 0, 0));
         
         output = newJTextField(0);
         output.setEditable(false);
         
+        liveView = new LiveView(programPane);
+        
+        decodeTimer = new Timer(DECODE_DELAY, e -> decode());
+        decodeTimer.setRepeats(false);
         tapePane.getDocument().addDocumentListener(new DocumentListener() {
             @Override
             public void removeUpdate(DocumentEvent e) {
-                update();
+                tapeEdit.add(e.getOffset(), -e.getLength());
+                decodeTimer.restart();
             }
             @Override
             public void insertUpdate(DocumentEvent e) {
-                update();
+                tapeEdit.add(e.getOffset(), e.getLength());
+                decodeTimer.restart();
             }
             @Override
             public void changedUpdate(DocumentEvent e) {
-                update();
-            }
-            private void update() {
-                String text = tapePane.getText();
-                StringBuilder builder = new StringBuilder();
-                for (var i = 0; i < text.length(); i++) {
-                    var ch = text.charAt(i);
-                    switch (ch) {
-                        case '*':
-                            builder.append(ch);
-                            break;
-                        case ' ':
-                            builder.append(ch);
-                            while (i+1 < text.length()) {
-                                if (text.charAt(i+1) != ' ')
-                                    break;
-                                i += 1;
-                            }
-                            break;
-                        case '0':
-                        case '1':
-                            var j = i + 1;
-                            for (; j < text.length(); j++) {
-                                ch = text.charAt(j);
-                                if (ch != '0' && ch != '1')
-                                    break;
-                            }
-                            int val = Integer.parseInt(text.substring(i, j), 2);
-                            builder.append(val);
-                            i = j - 1;
-                            break;
-                        default:
-                            break;    
-                    }
-                }
-                output.setText(builder.toString());
+                // attributes only
             }
         });
         tapePane.setText(tape);
@@ -231,9 +329,12 @@ public class Main {
         main.setLayout(new GridBagLayout());
         main.add(split,       new GridBagConstraints(0, 0, 2, 1, 1.0, 1.0, CENTER, BOTH, new Insets(4, 4, 2, 4), 0, 0));
         main.add(controlPane, new GridBagConstraints(0, 1, 2, 1, 0.0, 0.0, CENTER, BOTH, new Insets(2, 4, 2, 4), 0, 0));
-        main.add(newJLabel("Output:"), new GridBagConstraints(0, 2, 1, 1, 0.0, 0.0, CENTER, BOTH, new Insets(2, 4, 2, 2), 0, 0));
-        main.add(output,               new GridBagConstraints(1, 2, 1, 1, 0.0, 0.0, CENTER, BOTH, new Insets(2, 2, 2, 4), 0, 0));
-        main.add(status, new GridBagConstraints(0, 3, 2, 1, 0.0, 0.0, CENTER, BOTH, new Insets(2, 4, 4, 4), 0, 0));
+        main.add(runPane,     new GridBagConstraints(0, 2, 2, 1, 0.0, 0.0, CENTER, BOTH, new Insets(2, 4, 2, 4), 0, 0));
+        main.add(newJLabel("Output:"), new GridBagConstraints(0, 3, 1, 1, 0.0, 0.0, CENTER, BOTH, new Insets(2, 4, 2, 2), 0, 0));
+        main.add(output,               new GridBagConstraints(1, 3, 1, 1, 0.0, 0.0, CENTER, BOTH, new Insets(2, 2, 2, 4), 0, 0));
+        main.add(newJLabel("Live:"),   new GridBagConstraints(0, 4, 1, 1, 0.0, 0.0, CENTER, BOTH, new Insets(2, 4, 2, 2), 0, 0));
+        main.add(liveView,             new GridBagConstraints(1, 4, 1, 1, 0.0, 0.0, CENTER, BOTH, new Insets(2, 2, 2, 4), 0, 0));
+        main.add(status, new GridBagConstraints(0, 5, 2, 1, 0.0, 0.0, CENTER, BOTH, new Insets(2, 4, 4, 4), 0, 0));
         
         frame = new JFrame();
         frame.setDefaultCloseOperation(frame.DISPOSE_ON_CLOSE);
@@ -253,12 +354,68 @@ public class Main {
         parseAction.setEnabled(enabled);
         identAction.setEnabled(enabled && program != null);
         startAction.setEnabled(enabled && program != null);
+        pauseAction.setEnabled(running);
+        resumeAction.setEnabled(enabled && machine != null);
+        stepAction.setEnabled(enabled && machine != null);
+        runToAction.setEnabled(enabled && machine != null);
+        cancelAction.setEnabled(running || (enabled && machine != null));
+        metricsAction.setEnabled(profile != null);
         readAction.setEnabled(enabled);
         writeAction.setEnabled(enabled);
     }
     
+    /** Decodes the tape for the output field on the decoder thread, only around the edits after the first time. */
+    private void decode() {
+        if (decoded && tapeEdit.isEmpty())
+            return;
+        var text = tapePane.getText();
+        var full = !decoded;
+        var from = tapeEdit.from;
+        var oldTo = tapeEdit.oldTo();
+        var newTo = tapeEdit.to;
+        tapeEdit.reset();
+        decoded = true;
+        decode(() -> {
+            try {
+                return full ? decoder.decode(text, OUTPUT_LIMIT) : decoder.update(text, from, oldTo, newTo, OUTPUT_LIMIT);
+            } catch (IllegalArgumentException ex) {
+                ex.printStackTrace();
+                return decoder.decode(text, OUTPUT_LIMIT);
+            }
+        });
+    }
+    
+    /** Decodes a result tape that is not copied into the editor, the editor text is decoded in full on its next change. */
+    private void decode(Tape tape) {
+        decodeTimer.stop();
+        tapeEdit.reset();
+        decoded = false;
+        decode(() -> {
+            try {
+                return decoder.decode(tape.chars(), OUTPUT_LIMIT);
+            } catch (IllegalStateException ex) {
+                return ex.getMessage();
+            }
+        });
+    }
+    
+    private void decode(Supplier<String> task) {
+        var count = ++decodeCount;
+        decoding.execute(() -> {
+            var out = task.get();
+            SwingUtilities.invokeLater(() -> {
+                // older results are dropped, the newest decode also covers their edits
+                if (count == decodeCount) {
+                    output.setText(out);
+                }
+            });
+        });
+    }
+    
     private void resetProgram() {
         program = null;
+        // the positions of the heat map are no longer those of the text
+        heatMap.clear();
         programPane.setSelectionColor(NORMAL_SELECT);
         updateActions(true);
     }
@@ -276,13 +433,12 @@ public class Main {
         
         var file = chooser.getSelectedFile();
         try {
-            var code = new StringBuilder();
-            Files.lines(file.toPath()).forEach(line -> code.append(line).append('\n'));
+            var code = Files.readString(file.toPath());
             preferences.put(PREF_PROG_FILE, file.getAbsolutePath());
             if ((ev.getModifiers() & ev.SHIFT_MASK) != 0) {
-                code.insert(0, programPane.getText());
+                code = programPane.getText() + code;
             }
-            programPane.setText(code.toString());
+            programPane.setText(code);
             resetProgram();
             frame.setTitle(file.getName());
         } catch (IOException ex) {
@@ -374,12 +530,14 @@ public class Main {
         if (!append && file.exists() && showConfirm(OK_CANCEL_OPTION, "Confirm", file,  "file already exists, overwrite?") != OK_OPTION)
             return;
         
-        var tape = tapePane.getText().trim();
+        var options = append ? new OpenOption[] { WRITE, CREATE, APPEND } : new OpenOption[] { WRITE, CREATE, TRUNCATE_EXISTING };
         try {
-            if (append) {
-                Files.writeString(file.toPath(), tape, WRITE, CREATE, APPEND);
+            if (tapeTabs.getSelectedComponent() == resultView && resultView.tape() != null) {
+                try (var out = Files.newBufferedWriter(file.toPath(), options)) {
+                    resultView.tape().print(out);
+                }
             } else {
-                Files.writeString(file.toPath(), tape, WRITE, CREATE, TRUNCATE_EXISTING);
+                Files.writeString(file.toPath(), tapePane.getText().trim(), options);
             }
             preferences.put(PREF_TAPE_FILE, file.getAbsolutePath());
         } catch (IOException ex) {
@@ -392,7 +550,13 @@ public class Main {
         var text = CharBuffer.wrap(programPane.getText());
         
         try {
-            program = parse(text);
+            if (parsed != null && programEdit.isEmpty()) {
+                program = parsed;
+            } else {
+                program = Program.reparse(parsed, text, programEdit.from, programEdit.oldTo(), programEdit.to);
+            }
+            parsed = program;
+            programEdit.reset();
             text.rewind();
             preferences.put(PREF_CODE, text.toString());
             updateActions(true);
@@ -414,7 +578,7 @@ public class Main {
             return;
         }
         
-        var dialog = new IdentDialog(frame, program, programPane);
+        var dialog = new IdentDialog(frame, program, programPane, profile);
         dialog.addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
@@ -435,69 +599,162 @@ public class Main {
             showError("Error", "empty program");
             return;
         }
-        var worker = new SwingWorker<String, Change>() {
+        if (program.tapes() > 1) {
+            showError("Error", "program for " + program.tapes() + " tapes, run it with Runner or Batch");
+            return;
+        }
+        var level = String.valueOf(traceLevel.getSelectedItem()).trim();
+        try {
+            Trace.interval(level);
+        } catch (NumberFormatException ex) {
+            showError(ex, "trace level must be \"off\", \"full\" or a number of steps");
+            return;
+        }
+        long steps;
+        long millis;
+        try {
+            steps = budget(stepBudget, Long.MAX_VALUE);
+            millis = budget(timeBudget, 0);
+        } catch (NumberFormatException ex) {
+            showError(ex, "budgets must be empty or a positive number");
+            return;
+        }
+        preferences.put(PREF_TRACE, level);
+        preferences.put(PREF_STEP_BUDGET, stepBudget.getText().trim());
+        preferences.put(PREF_TIME_BUDGET, timeBudget.getText().trim());
+        var decided = decide.isSelected();
+        preferences.putBoolean(PREF_DECIDE, decided);
+        preferences.putBoolean(PREF_BOUNCERS, bouncers.isSelected());
+        preferences.putBoolean(PREF_PROFILE, profiled.isSelected());
+        
+        machine = new Machine(program);
+        if (decided) {
+            machine.decider(bouncers.isSelected() ? Deciders.standard() : Deciders.proven());
+        }
+        profile = profiled.isSelected() ? new Profile(machine.table()) : null;
+        machine.profile(profile);
+        this.level = level;
+        maxSteps = steps;
+        control.timeout(millis);
+        execute(tapePane.getText(), steps, -1);
+    }
+    
+    private static long budget(JTextField field, long none) throws NumberFormatException {
+        var text = field.getText().trim();
+        if (text.isEmpty())
+            return none;
+        var value = Long.parseLong(text);
+        if (value <= 0)
+            throw new NumberFormatException("not positive: " + value);
+        return value;
+    }
+    
+    private void doPause(ActionEvent ev) {
+        control.pause();
+    }
+    
+    private void doResume(ActionEvent ev) {
+        execute(null, maxSteps - machine.steps(), -1);
+    }
+    
+    private void doStep(ActionEvent ev) {
+        try {
+            execute(null, budget(stepCount, 1), -1);
+        } catch (NumberFormatException ex) {
+            showError(ex, "step count must be a positive number");
+        }
+    }
+    
+    private void doRunTo(ActionEvent ev) {
+        int state;
+        try {
+            state = Integer.parseInt(targetState.getText().trim());
+        } catch (NumberFormatException ex) {
+            showError(ex, "state must be a number");
+            return;
+        }
+        if (state < 0 || state >= machine.table().stateCount()) {
+            showError("Error", "no state " + state);
+            return;
+        }
+        execute(null, maxSteps - machine.steps(), state);
+    }
+    
+    private void doCancel(ActionEvent ev) {
+        if (running) {
+            control.cancel();
+        } else {
+            liveView.message(String.format("cancelled after %d steps, state %d, position %d", 
+                machine.steps(), machine.state(), machine.position()));
+            machine = null;
+            updateActions(true);
+        }
+    }
+    
+    private void doMetrics(ActionEvent ev) {
+        var tabs = new JTabbedPane();
+        tabs.addTab("Prometheus", new JScrollPane(newJTextArea(profile.prometheus())));
+        tabs.addTab("JSON", new JScrollPane(newJTextArea(profile.json())));
+        tabs.setPreferredSize(new Dimension(600, 400));
+        showMessageDialog(frame, tabs, "Metrics", PLAIN_MESSAGE);
+    }
+    
+    /** 
+     * Runs the current machine on a background thread for up to {@code steps} steps, stopping when 
+     * {@code target} is entered if not -1; loads {@code text} first if not {@code null}.
+     */
+    private void execute(String text, long steps, int target) {
+        var machine = this.machine;
+        var level = this.level;
+        var monitor = new Monitor();
+        machine.monitor(monitor);
+        machine.control(control);
+        control.reset();
+        control.target(target);
+        var worker = new SwingWorker<Result, Void>() {
             @Override
-            protected String doInBackground() throws RunException {
-                var tape = new StringBuilder(tapePane.getText());
-                if (tape.length() == 0 || tape.charAt(0) != '*')
-                    throw new RunException("tape must start with '*'");
-                preferences.put(PREF_TAPE, tape.toString());
-                
-                var position = 0;
-                var stateIndex = 0;
-                var state = program.state(stateIndex);
-                
-                while (!Thread.interrupted()) {
-                    var symbol = tape.charAt(position);
-                    Alternative alternative;
-                    try {
-                        alternative = state.alternativeFor(symbol);
-                    } catch (NoSuchElementException ex) {
-                        throw new StateException(state, 
-                                "no alternatives for '%s', position %d, state %d (%s)", symbol, position, stateIndex, ex);
-                    }
-                    tape.setCharAt(position, alternative.replace);
-                    publish(new Change(position, alternative));
-                    switch (alternative.command) {
-                        case HALT: 
-                            return tape.toString();
-                        case NOP:
-                            break;
-                        case LEFT: 
-                            if (--position < 0) throw new AlternativeException(alternative, "moving left of start");
-                            break;
-                        case RIGHT:
-                            if (++position >= tape.length()) tape.append(' ');
-                            break;
-                        default:
-                            throw new AlternativeException(alternative, "unhandled command \"%s\"", alternative.command);
-                    }
-                    int old = stateIndex;
-                    stateIndex += alternative.jump();
-                    try {
-                        state = program.state(stateIndex);
-                    } catch (NoSuchElementException ex) {
-                        throw new AlternativeException(alternative, 
-                            "no state at index '%d', position %d, from state %d (%S)", stateIndex, position, old, ex);
-                    }
+            protected Result doInBackground() throws RunException {
+                if (text != null) {
+                    machine.load(text);
+                    preferences.put(PREF_TAPE, text);
                 }
-                return tape.toString();
-            }
-            @Override
-            protected void process(List<Change> changes) {
-                for (var change : changes) {
-                    System.out.printf("%5d: %s%n", change.position, change.alternative);
+                try (var trace = Trace.of(level, Trace.printer(machine.program(), System.out))) {
+                    machine.trace(trace);
+                    return machine.run(steps);
                 }
             }
             @Override
             protected void done() {
-                updateActions(true);
+                running = false;
+                liveView.stop();
                 try {
-                    tapePane.setText(get());
+                    var result = get();
+                    liveView.message(result.toString());
+                    var ended = result.reason == Result.Reason.HALTED || result.reason == Result.Reason.NON_HALTING
+                        || result.reason == Result.Reason.INTERRUPTED;
+                    if (ended) {
+                        Main.this.machine = null;
+                    }
+                    resultView.tape(result.tape);
+                    tapeTabs.setSelectedComponent(resultView);
+                    // large results are only shown in the result view, the editor keeps the input
+                    if (result.tape.end() - result.tape.start() <= EDIT_LIMIT) {
+                        tapePane.setText(result.text());
+                    } else if (ended) {
+                        decode(result.tape);
+                    }
+                    if (result.verdict != null) {
+                        var verdict = result.verdict;
+                        showMessageDialog(frame, String.format("%s after %d steps:%n%s", verdict.kind, result.steps, verdict.evidence), 
+                            verdict.proven ? "Never halts" : "Probably never halts", INFORMATION_MESSAGE);
+                    }
                 } catch (InterruptedException ex) {
+                    Main.this.machine = null;
                     showError(ex, "executing program");
                 } catch (ExecutionException ex) {
+                    Main.this.machine = null;
                     var cause = ex.getCause();
+                    liveView.message(String.format("error after %d steps: %s", machine.steps(), cause));
                     if (cause instanceof RunException) {
                         var e = (RunException) cause;
                         var position = e.position();
@@ -506,44 +763,23 @@ public class Main {
                         }
                     }
                     showError(cause==null ? ex : cause, "executing program");
+                } finally {
+                    if (profile != null && profile.table().program == program) {
+                        heatMap.show(profile);
+                    }
+                    updateActions(true);
                 }
             }
         };
+        running = true;
+        heatMap.clear();
+        // the tape changes while running
+        resultView.tape(null);
         updateActions(false);
+        liveView.start(monitor, machine.program());
         worker.execute();
     }
 
-    private Program parse(CharBuffer text) throws ParseException {
-        Program prog = null;
-        while (text.hasRemaining()) {
-            text.mark();
-            var ch = text.get();
-            switch (ch) {
-                case ' ':
-                case '\r':
-                case '\n':
-                    break;
-                case ';':
-                    while (text.hasRemaining() && text.get() != '\n') {
-                        text.mark();
-                    }
-                    text.reset();
-                    break;
-                case '(':
-                    if (prog != null)
-                        throw new ParseException("program already defined", text.position()-1);
-                    text.reset();
-                    prog = Program.parse(text);
-                    break;
-                default:
-                    throw new ParseException(String.format("expecting program, unrecognized character '%s' (0x%2x)", ch, (int)ch), text.position()-1);
-            }
-        }
-        if (prog == null)
-            throw new ParseException("end of text expecting program", text.position()-1);
-        return prog;
-    }
-    
     private JPanel newJPanel() {
         return new JPanel();
     }
@@ -564,6 +800,13 @@ public class Main {
         return scroll;
     }
 
+    private JTextArea newJTextArea(String text) {
+        var area = new JTextArea(text);
+        area.setFont(FONT);
+        area.setEditable(false);
+        return area;
+    }
+    
     private JTextField newJTextField(int columns) {
         var field = new JTextField(columns);
         field.setFont(FONT);
@@ -617,47 +860,42 @@ public class Main {
     
     ////////////////////////////////////////////////////////////////////////////////////////////////
     
-    private static class Change {
+    /** Range of a text changed since the last {@link #reset()}, {@code from} and {@code to} in the current text. */
+    private static final class Edit {
         
-        private final int position;
-        private final Alternative alternative;
+        int from = -1;
+        int to;
+        int delta;
         
-        Change(int position, Alternative alternative) {
-            this.position = position;
-            this.alternative = alternative;
-        }
-    }
-    
-    private static class RunException extends Exception {
-        protected RunException(String format, Object... args) {
-            super(String.format(format, args));
-        }
-        Position position() {
-            return null;
-        }
-    }
-    
-    private static class StateException extends RunException {
-        public final State state;
-        StateException(State state, String format, Object... args) {
-            super(format, args);
-            this.state = requireNonNull(state); 
+        /** Extends the range by an insertion (positive length) or a removal at {@code offset}. */
+        void add(int offset, int length) {
+            var end = offset + Math.max(length, 0);
+            if (from == -1) {
+                from = offset;
+                to = end;
+            } else {
+                from = Math.min(from, offset);
+                if (length >= 0) {
+                    to = offset <= to ? to + length : end;
+                } else {
+                    to = offset - length <= to ? to + length : offset;
+                }
+            }
+            delta += length;
         }
-        @Override
-        Position position() {
-            return state.position;
+        
+        boolean isEmpty() {
+            return from == -1;
         }
-    }
-    
-    private static class AlternativeException extends RunException {
-        public final Alternative alternative;
-        AlternativeException(Alternative alternative, String format, Object... args) {
-            super(format, args);
-            this.alternative = requireNonNull(alternative); 
+        
+        /** End of the range in the text before the edits. */
+        int oldTo() {
+            return to - delta;
         }
-        @Override
-        Position position() {
-            return alternative.position;
+        
+        void reset() {
+            from = -1;
+            delta = 0;
         }
     }
 }
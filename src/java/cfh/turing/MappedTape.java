@@ -0,0 +1,199 @@
+package cfh.turing;
+
+import static java.nio.file.StandardOpenOption.*;
+import static java.util.Objects.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class MappedTape implements Tape, Closeable {
+    
+    private static final int REGION_SHIFT = 26;
+    private static final long REGION_BYTES = 1L << REGION_SHIFT;
+    
+    private static final int DEFAULT_REGIONS = 16;
+    
+    public static MappedTape temporary(Alphabet alphabet, Path directory) throws IOException {
+        var file = Files.createTempFile(directory, "turing", ".tape");
+        var channel = FileChannel.open(file, READ, WRITE, TRUNCATE_EXISTING, SPARSE, DELETE_ON_CLOSE);
+        return new MappedTape(alphabet, channel, DEFAULT_REGIONS);
+    }
+    
+    private final Alphabet alphabet;
+    // bits per cell as for a packed tape, cells per byte
+    private final int bits;
+    private final int cells;
+    private final int mask;
+    private final long regionCells;
+    private final FileChannel channel;
+    private final Map<Long, MappedByteBuffer> regions;
+    
+    private MappedByteBuffer current;
+    private long currentStart;
+    private long currentEnd;
+    
+    private long head;
+    private long end;
+    
+    public MappedTape(Alphabet alphabet, Path file) throws IOException {
+        this(alphabet, FileChannel.open(file, READ, WRITE, CREATE, TRUNCATE_EXISTING, SPARSE), DEFAULT_REGIONS);
+    }
+    
+    private MappedTape(Alphabet alphabet, FileChannel channel, int maxRegions) throws IOException {
+        this.alphabet = requireNonNull(alphabet);
+        this.channel = requireNonNull(channel);
+        bits = alphabet.bits();
+        cells = Byte.SIZE / bits;
+        mask = (1 << bits) - 1;
+        regionCells = REGION_BYTES * cells;
+        regions = new LinkedHashMap<>(maxRegions, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, MappedByteBuffer> eldest) {
+                // unmapping keeps the dirty pages, they are only forced on close
+                return size() > maxRegions;
+            }
+        };
+        head = 0;
+        end = 0;
+        select(0);
+    }
+    
+    public void load(CharSequence text) throws IllegalArgumentException {
+        for (var i = 0; i < text.length(); i++) {
+            var ch = text.charAt(i);
+            var symbol = alphabet.code(ch);
+            if (symbol < 0)
+                throw new IllegalArgumentException(String.format("invalid symbol '%s' (0x%2x) at position %d", ch, (int)ch, i));
+            set(i, symbol);
+        }
+    }
+    
+    @Override
+    public Alphabet alphabet() {
+        return alphabet;
+    }
+    
+    @Override
+    public long head() {
+        return head;
+    }
+    
+    @Override
+    public void head(long position) {
+        check(position);
+        head = position;
+        if (position >= end) {
+            end = position + 1;
+        }
+        select(position);
+    }
+    
+    @Override
+    public int read() {
+        var offset = head - currentStart;
+        return current.get((int) (offset / cells)) >>> ((offset % cells) * bits) & mask;
+    }
+    
+    @Override
+    public void write(int symbol) {
+        var offset = head - currentStart;
+        var index = (int) (offset / cells);
+        var bit = (int) (offset % cells) * bits;
+        current.put(index, (byte) (current.get(index) & ~(mask << bit) | (symbol & mask) << bit));
+    }
+    
+    @Override
+    public void left() {
+        check(head - 1);
+        if (--head < currentStart) {
+            select(head);
+        }
+    }
+    
+    @Override
+    public void right() {
+        if (++head >= end) {
+            end = head + 1;
+        }
+        if (head >= currentEnd) {
+            select(head);
+        }
+    }
+    
+    @Override
+    public int get(long position) {
+        if (position < 0 || position >= end)
+            return 0;
+        var buffer = region(position / regionCells);
+        var offset = position % regionCells;
+        return buffer.get((int) (offset / cells)) >>> ((offset % cells) * bits) & mask;
+    }
+    
+    @Override
+    public void set(long position, int symbol) {
+        check(position);
+        if (position >= end) {
+            end = position + 1;
+        }
+        var buffer = region(position / regionCells);
+        var offset = position % regionCells;
+        var index = (int) (offset / cells);
+        var bit = (int) (offset % cells) * bits;
+        buffer.put(index, (byte) (buffer.get(index) & ~(mask << bit) | (symbol & mask) << bit));
+    }
+    
+    @Override
+    public long start() {
+        return 0;
+    }
+    
+    @Override
+    public long end() {
+        return end;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        for (var buffer : regions.values()) {
+            buffer.force();
+        }
+        regions.clear();
+        current = null;
+        // also the pages of the regions evicted before
+        channel.force(false);
+        channel.close();
+    }
+    
+    private void check(long position) {
+        if (position < 0)
+            throw new IllegalArgumentException("mapped tape has no negative positions: " + position);
+    }
+    
+    private void select(long position) {
+        var index = position / regionCells;
+        current = region(index);
+        currentStart = index * regionCells;
+        currentEnd = currentStart + regionCells;
+    }
+    
+    private MappedByteBuffer region(long index) {
+        var buffer = regions.get(index);
+        if (buffer == null) {
+            try {
+                buffer = channel.map(MapMode.READ_WRITE, index * REGION_BYTES, REGION_BYTES);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("mapping tape region " + index, ex);
+            }
+            regions.put(index, buffer);
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,101 @@
+package cfh.turing;
+
+/**
+ * Samples a running engine for a live view. The engine calls {@link #sample(long, int, Tape)} at the
+ * step returned by the previous call and the sample is published as an immutable {@link Snapshot};
+ * readers on other threads just {@link #snapshot() read} the last one, nothing is locked or waited on.
+ *
+ * The sampling interval in steps adapts so there is about one sample every {@link #PERIOD_NANOS}.
+ */
+public final class Monitor {
+    
+    public static final long PERIOD_NANOS = 10_000_000;
+    /** Cells on each side of the head in a snapshot. */
+    public static final int WINDOW = 40;
+    
+    private static final long MAX_INTERVAL = 1L << 30;
+    
+    private volatile Snapshot snapshot = null;
+    
+    private long interval = 1;
+    private long lastSteps;
+    private long lastNanos;
+    
+    /** The last sample, or {@code null} if there was none yet. */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+    
+    /** Publishes a snapshot, returns the step of the next sample. */
+    long sample(long steps, int state, Tape tape) {
+        var nanos = System.nanoTime();
+        var rate = 0.0;
+        if (snapshot != null) {
+            var elapsed = nanos - lastNanos;
+            rate = elapsed == 0 ? snapshot.rate : (steps - lastSteps) * 1e9 / elapsed;
+            if (elapsed < PERIOD_NANOS / 2) {
+                interval = Math.min(interval * 2, MAX_INTERVAL);
+            } else if (elapsed > PERIOD_NANOS * 2) {
+                interval = Math.max(interval / 2, 1);
+            }
+        }
+        var head = tape.head();
+        var from = Math.max(tape.start(), head - WINDOW);
+        var to = Math.min(tape.end(), head + WINDOW + 1);
+        var cells = new byte[(int) Math.max(0, to - from)];
+        for (var i = 0; i < cells.length; i++) {
+            cells[i] = (byte) tape.get(from + i);
+        }
+        snapshot = new Snapshot(steps, state, head, from, cells, tape.alphabet(), rate);
+        lastSteps = steps;
+        lastNanos = nanos;
+        return steps + interval;
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    public static final class Snapshot {
+        
+        public final long steps;
+        public final int state;
+        public final long head;
+        /** Position of the first of {@link #cells}. */
+        public final long from;
+        private final byte[] cells;
+        public final Alphabet alphabet;
+        /** Steps per second since the previous sample. */
+        public final double rate;
+        
+        private Snapshot(long steps, int state, long head, long from, byte[] cells, Alphabet alphabet, double rate) {
+            this.steps = steps;
+            this.state = state;
+            this.head = head;
+            this.from = from;
+            this.cells = cells;
+            this.alphabet = alphabet;
+            this.rate = rate;
+        }
+        
+        /** Symbol code under the head. */
+        public int symbol() {
+            var index = head - from;
+            return 0 <= index && index < cells.length ? cells[(int) index] : 0;
+        }
+        
+        /** The cells around the head as text, the head cell in brackets. */
+        public String cells() {
+            var text = new StringBuilder(cells.length + 2);
+            for (var i = 0; i < cells.length; i++) {
+                var head = from + i == this.head;
+                if (head) {
+                    text.append('[');
+                }
+                text.append(alphabet.symbol(cells[i]));
+                if (head) {
+                    text.append(']');
+                }
+            }
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package cfh.turing;
+
+import static java.util.Objects.*;
+
+/**
+ * Runs programs for several tapes. Each step packs the symbols under the heads into one entry of the
+ * {@link Table}, so the alternative is found with a single lookup whatever the number of tapes. The
+ * input is loaded on the first tape, the others start with just the {@code '*'}; the result is the
+ * first tape.
+ *
+ * An alternative writes all tapes, then halts if the command of any tape is {@code H}, otherwise
+ * moves each head as given by its tape's command.
+ */
+public class MultiMachine implements Engine {
+
+    private final Table table;
+    private final PackedTape[] tapes;
+
+    private int stateIndex;
+    private long steps;
+    private boolean halted;
+
+    private RunControl control = null;
+
+    public MultiMachine(Program program) {
+        this(Table.compile(program));
+    }
+
+    public MultiMachine(Table table) {
+        this.table = requireNonNull(table);
+        table.requireMultiTape();
+        if (table.stateCount() == 0)
+            throw new IllegalArgumentException("empty program");
+        tapes = new PackedTape[table.tapes];
+        for (var t = 0; t < tapes.length; t++) {
+            tapes[t] = new PackedTape(table.alphabet, "*");
+        }
+    }
+
+    @Override
+    public void load(String text) throws RunException {
+        if (text.isEmpty() || text.charAt(0) != '*')
+            throw new RunException("tape must start with '*'");
+        try {
+            tapes[0] = new PackedTape(table.alphabet, text);
+        } catch (IllegalArgumentException ex) {
+            throw (RunException) new RunException("invalid tape, %s", ex.getMessage()).initCause(ex);
+        }
+        for (var t = 1; t < tapes.length; t++) {
+            tapes[t] = new PackedTape(table.alphabet, "*");
+        }
+        stateIndex = 0;
+        steps = 0;
+        halted = false;
+    }
+
+    public void control(RunControl control) {
+        this.control = control;
+    }
+
+    public Program program() {
+        return table.program;
+    }
+
+    @Override
+    public Table table() {
+        return table;
+    }
+
+    /** The first tape, holding the input and the result. */
+    @Override
+    public Tape tape() {
+        return tapes[0];
+    }
+
+    public Tape tape(int index) {
+        return tapes[index];
+    }
+
+    public int tapeCount() {
+        return tapes.length;
+    }
+
+    @Override
+    public int state() {
+        return stateIndex;
+    }
+
+    @Override
+    public long steps() {
+        return steps;
+    }
+
+    @Override
+    public boolean halted() {
+        return halted;
+    }
+
+    @Override
+    public Result run(long maxSteps) throws RunException {
+        if (halted)
+            return new Result(Result.Reason.HALTED, steps, stateIndex, tapes[0]);
+
+        final var tapes = this.tapes;
+        final var tapeCount = tapes.length;
+        final var symbols = table.symbols;
+        final var width = table.width;
+        final var replace = table.replace;
+        final var command = table.command;
+        final var move = table.move;
+        final var next = table.next;
+        final var control = this.control;
+        final var timeout = control == null ? 0L : control.timeout();
+        final var deadline = timeout == 0 ? Long.MAX_VALUE : System.nanoTime() + timeout * 1_000_000;
+        final var breakState = control == null ? -1 : control.target();
+        var polled = 0L;
+        var watched = breakState == -1 ? Long.MAX_VALUE : 1L;
+        var checked = Math.min(polled, watched);
+
+        var state = stateIndex;
+        var count = 0L;
+        var reason = Result.Reason.LIMIT;
+        try {
+            loop:
+            while (count < maxSteps) {
+                if (count == checked) {
+                    if (count == polled) {
+                        if (Thread.interrupted() || (control != null && control.cancelled())) {
+                            reason = Result.Reason.INTERRUPTED;
+                            break;
+                        }
+                        if (control != null && control.paused()) {
+                            reason = Result.Reason.PAUSED;
+                            break;
+                        }
+                        if (deadline != Long.MAX_VALUE && System.nanoTime() >= deadline) {
+                            reason = Result.Reason.TIMEOUT;
+                            break;
+                        }
+                        polled = count + RunControl.POLL;
+                    }
+                    if (count == watched) {
+                        if (state == breakState) {
+                            reason = Result.Reason.BREAKPOINT;
+                            break;
+                        }
+                        watched = count + 1;
+                    }
+                    checked = Math.min(polled, watched);
+                }
+
+                var entry = 0;
+                for (var t = 0; t < tapeCount; t++) {
+                    entry = entry * symbols + tapes[t].read();
+                }
+                var index = state * width + entry;
+                var cmd = command[index];
+                if (cmd == Table.MISSING)
+                    throw new StateException(table.program.state(state),
+                        "no alternatives for %s, positions %s, state %d", table.symbols(entry), positions(), state);
+
+                var base = index * tapeCount;
+                for (var t = 0; t < tapeCount; t++) {
+                    tapes[t].write(replace[base + t]);
+                }
+                count += 1;
+                if (cmd == Table.HALT) {
+                    halted = true;
+                    reason = Result.Reason.HALTED;
+                    break loop;
+                }
+                for (var t = 0; t < tapeCount; t++) {
+                    switch (move[base + t]) {
+                        case Table.LEFT:
+                            if (tapes[t].head() == 0)
+                                throw new AlternativeException(table.alternative(state, entry), "moving left of start on tape %d", t);
+                            tapes[t].left();
+                            break;
+                        case Table.RIGHT:
+                            tapes[t].right();
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                var target = next[index];
+                if (target == Table.INVALID)
+                    throw table.invalid(state, entry, tapes[0].head());
+                state = target;
+            }
+        } finally {
+            stateIndex = state;
+            steps += count;
+        }
+        return new Result(reason, steps, stateIndex, tapes[0]);
+    }
+
+    private String positions() {
+        var text = new StringBuilder("[");
+        for (var t = 0; t < tapes.length; t++) {
+            text.append(t == 0 ? "" : " ").append(tapes[t].head());
+        }
+        return text.append(']').toString();
+    }
+}
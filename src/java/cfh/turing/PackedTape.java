@@ -0,0 +1,303 @@
+package cfh.turing;
+
+import static java.util.Objects.*;
+
+import java.util.Arrays;
+
+/**
+ * A tape packing its cells into {@code long} words, with {@link Alphabet#bits()} bits per cell: 32
+ * cells per word for the default alphabet, 16 or 8 for larger ones.
+ */
+public class PackedTape implements Tape {
+    
+    private static final int CHUNK = 1024;
+    private static final int MAX_WORDS = Integer.MAX_VALUE - 8;
+    
+    private final Alphabet alphabet;
+    private final int symbols;
+    private final int bits;
+    // bits is 1 << order, so cells are found by shifts instead of divisions
+    private final int order;
+    private final int cells;
+    private final int shift;
+    private final long mask;
+    // lowest bit of every cell, and all bits but the highest of every cell
+    private final long low;
+    private final long rest;
+    
+    private long[] words;
+    private long origin;
+    private long head;
+    private long start;
+    private long end;
+    
+    public PackedTape(Alphabet alphabet) {
+        this.alphabet = requireNonNull(alphabet);
+        symbols = alphabet.size();
+        bits = alphabet.bits();
+        order = Integer.numberOfTrailingZeros(bits);
+        cells = Long.SIZE / bits;
+        shift = Integer.numberOfTrailingZeros(cells);
+        mask = (1L << bits) - 1;
+        low = Long.divideUnsigned(-1L, mask);
+        rest = ~(low << (bits - 1));
+        words = new long[CHUNK];
+        origin = 0;
+        head = 0;
+        start = 0;
+        end = 0;
+    }
+    
+    private PackedTape(PackedTape tape) {
+        alphabet = tape.alphabet;
+        symbols = tape.symbols;
+        bits = tape.bits;
+        order = tape.order;
+        cells = tape.cells;
+        shift = tape.shift;
+        mask = tape.mask;
+        low = tape.low;
+        rest = tape.rest;
+        var first = (int) ((tape.start - tape.origin) >>> shift);
+        var last = (int) ((Math.max(tape.end - 1, tape.start) - tape.origin) >>> shift);
+        words = Arrays.copyOfRange(tape.words, first, last + 1);
+        origin = tape.origin + (long) first * cells;
+        head = tape.head;
+        start = tape.start;
+        end = tape.end;
+    }
+    
+    public PackedTape(Alphabet alphabet, CharSequence text) throws IllegalArgumentException {
+        this(alphabet);
+        for (var i = 0; i < text.length(); i++) {
+            var ch = text.charAt(i);
+            var symbol = alphabet.code(ch);
+            if (symbol < 0)
+                throw new IllegalArgumentException(String.format("invalid symbol '%s' (0x%2x) at position %d", ch, (int)ch, i));
+            set(i, symbol);
+        }
+    }
+    
+    @Override
+    public Alphabet alphabet() {
+        return alphabet;
+    }
+    
+    @Override
+    public long head() {
+        return head;
+    }
+    
+    @Override
+    public void head(long position) {
+        ensure(position);
+        head = position;
+    }
+    
+    @Override
+    public int read() {
+        var offset = head - origin;
+        return (int) (words[(int) (offset >>> shift)] >>> ((offset & (cells-1)) << order) & mask);
+    }
+    
+    @Override
+    public void write(int symbol) {
+        var offset = head - origin;
+        var index = (int) (offset >>> shift);
+        var bit = (offset & (cells-1)) << order;
+        words[index] = words[index] & ~(mask << bit) | (symbol & mask) << bit;
+    }
+    
+    @Override
+    public void left() {
+        if (--head < start) {
+            ensure(head);
+        }
+    }
+    
+    @Override
+    public void right() {
+        if (++head >= end) {
+            ensure(head);
+        }
+    }
+    
+    @Override
+    public long scanRight(long mask, long max) {
+        var moved = 0L;
+        while (moved < max) {
+            var offset = head - origin;
+            var index = offset >>> shift;
+            if (index >= words.length) {
+                if ((mask & 1) != 0) {
+                    head += max - moved;
+                    moved = max;
+                }
+                break;
+            }
+            var cell = (int) (offset & (cells-1));
+            var stop = stops(words[(int) index], mask) & (-1L << (cell * bits));
+            var n = (stop == 0 ? cells : Long.numberOfTrailingZeros(stop) >>> order) - cell;
+            n = (int) Math.min(n, max - moved);
+            head += n;
+            moved += n;
+            if (stop != 0)
+                break;
+        }
+        if (head >= end) {
+            ensure(head);
+        }
+        return moved;
+    }
+    
+    @Override
+    public long scanLeft(long mask, long max) {
+        var moved = 0L;
+        while (moved < max) {
+            var offset = head - origin;
+            if (offset < 0) {
+                if ((mask & 1) != 0) {
+                    head -= max - moved;
+                    moved = max;
+                }
+                break;
+            }
+            var index = (int) (offset >>> shift);
+            var cell = (int) (offset & (cells-1));
+            var stop = stops(words[index], mask) & (-1L >>> ((cells-1-cell) * bits));
+            var n = stop == 0 ? cell + 1 : cell - ((Long.SIZE-1 - Long.numberOfLeadingZeros(stop)) >>> order);
+            n = (int) Math.min(n, max - moved);
+            head -= n;
+            moved += n;
+            if (stop != 0)
+                break;
+        }
+        if (head < start) {
+            ensure(head);
+        }
+        return moved;
+    }
+    
+    /** Returns an independent copy trimmed to the used extent. */
+    public PackedTape copy() {
+        return new PackedTape(this);
+    }
+    
+    /** Approximate number of bytes used by this tape. */
+    public long memory() {
+        return (long) words.length * Long.BYTES + 64;
+    }
+    
+    long block(long index, int size) {
+        var offset = index * size - origin;
+        if (offset < 0 || offset >= (long) words.length * cells)
+            return 0;
+        var word = words[(int) (offset >>> shift)];
+        if (size == cells)
+            return word;
+        return word >>> ((offset & (cells-1)) << order) & ((1L << (size * bits)) - 1);
+    }
+    
+    void block(long index, int size, long value) {
+        var position = index * size;
+        capacity(position);
+        var offset = position - origin;
+        var i = (int) (offset >>> shift);
+        if (size == cells) {
+            words[i] = value;
+        } else {
+            var bit = (offset & (cells-1)) << order;
+            var mask = ((1L << (size * bits)) - 1) << bit;
+            words[i] = words[i] & ~mask | (value << bit) & mask;
+        }
+    }
+    
+    void truncate(long end) {
+        if (end < this.end && end > head) {
+            this.end = end;
+        }
+    }
+    
+    void extend(long position) {
+        ensure(position);
+    }
+    
+    int bits() {
+        return bits;
+    }
+    
+    /** Returns the highest bit of every cell in {@code word} holding a symbol not in {@code mask}. */
+    private long stops(long word, long mask) {
+        var stops = 0L;
+        for (var symbol = 0; symbol < symbols; symbol++) {
+            if ((mask >>> symbol & 1) == 0) {
+                // the highest bit of the cells equal to symbol, no carry crosses a cell
+                var diff = word ^ (symbol * low);
+                stops |= ~(((diff & rest) + rest) | diff | rest);
+            }
+        }
+        return stops;
+    }
+    
+    @Override
+    public int get(long position) {
+        var offset = position - origin;
+        if (offset < 0 || offset >= (long) words.length * cells)
+            return 0;
+        return (int) (words[(int) (offset >>> shift)] >>> ((offset & (cells-1)) << order) & mask);
+    }
+    
+    @Override
+    public void set(long position, int symbol) {
+        ensure(position);
+        var offset = position - origin;
+        var index = (int) (offset >>> shift);
+        var bit = (offset & (cells-1)) << order;
+        words[index] = words[index] & ~(mask << bit) | (symbol & mask) << bit;
+    }
+    
+    @Override
+    public long start() {
+        return start;
+    }
+    
+    @Override
+    public long end() {
+        return end;
+    }
+    
+    private void ensure(long position) {
+        if (position < start) {
+            start = position;
+        }
+        if (position >= end) {
+            end = position + 1;
+        }
+        capacity(position);
+    }
+    
+    private void capacity(long position) {
+        var offset = position - origin;
+        var capacity = (long) words.length * cells;
+        if (offset >= capacity) {
+            var needed = (offset >>> shift) + 1;
+            words = Arrays.copyOf(words, grow(needed));
+        } else if (offset < 0) {
+            var needed = ((-offset + cells - 1) >>> shift);
+            var size = grow(words.length + needed);
+            var added = size - words.length;
+            var grown = new long[size];
+            System.arraycopy(words, 0, grown, added, words.length);
+            words = grown;
+            origin -= (long) added * cells;
+        }
+    }
+    
+    private int grow(long needed) {
+        var size = Math.max(needed, words.length + Math.max(CHUNK, words.length / 2L));
+        size = (size + CHUNK - 1) / CHUNK * CHUNK;
+        if (needed > MAX_WORDS)
+            throw new IllegalStateException("tape too long: " + needed * cells + " cells");
+        return (int) Math.min(size, MAX_WORDS);
+    }
+}
@@ -0,0 +1,194 @@
+package cfh.turing;
+
+import static java.util.Objects.*;
+
+import java.util.Locale;
+
+/**
+ * Execution counters of a {@link Machine}: how often each alternative was executed, counted in an
+ * array indexed like the {@link Table}, and the steps, run time and tape size. The machine updates
+ * the totals every {@link RunControl#POLL} steps and at the end of each run, so they can be read and
+ * exported from another thread while it runs; the hit counts are then only approximately in sync.
+ *
+ * A profiled machine executes every step one by one, sweeps are not taken as a single move, so the
+ * counts are exact but the run is slower.
+ */
+public final class Profile {
+    
+    private final Table table;
+    private final long[] hits;
+    
+    private volatile long steps = 0;
+    private volatile long nanos = 0;
+    private volatile long cells = 0;
+    
+    private long base = 0;
+    private long started;
+    
+    public Profile(Table table) {
+        this.table = requireNonNull(table);
+        table.requireSingleTape();
+        hits = new long[table.states * table.symbols];
+    }
+    
+    public Table table() {
+        return table;
+    }
+    
+    long[] hits() {
+        return hits;
+    }
+    
+    void start() {
+        started = System.nanoTime();
+    }
+    
+    void sample(long steps, Tape tape) {
+        publish(steps, base + System.nanoTime() - started, tape);
+    }
+    
+    void stop(long steps, Tape tape) {
+        base += System.nanoTime() - started;
+        publish(steps, base, tape);
+    }
+    
+    private void publish(long steps, long nanos, Tape tape) {
+        this.cells = tape.end() - tape.start();
+        this.nanos = nanos;
+        this.steps = steps;
+    }
+    
+    public long steps() {
+        return steps;
+    }
+    
+    /** Time spent running, in seconds. */
+    public double seconds() {
+        return nanos / 1e9;
+    }
+    
+    public double rate() {
+        var nanos = this.nanos;
+        return nanos == 0 ? 0.0 : steps * 1e9 / nanos;
+    }
+    
+    /** Cells of the tape, which only grows, so this is the largest extent reached. */
+    public long cells() {
+        return cells;
+    }
+    
+    /** Total distance moved by the head, in cells. */
+    public long travel() {
+        var travel = 0L;
+        for (var index = 0; index < hits.length; index++) {
+            var cmd = table.command[index];
+            if (cmd == Table.LEFT || cmd == Table.RIGHT || cmd == Table.SWEEP_LEFT || cmd == Table.SWEEP_RIGHT) {
+                travel += hits[index];
+            }
+        }
+        return travel;
+    }
+    
+    /** Steps executed in {@code state}. */
+    public long hits(int state) {
+        var sum = 0L;
+        for (var symbol = 0; symbol < table.symbols; symbol++) {
+            sum += hits[state * table.symbols + symbol];
+        }
+        return sum;
+    }
+    
+    /** Times the alternative for {@code symbol} (a code of the alphabet) was executed in {@code state}. */
+    public long hits(int state, int symbol) {
+        return hits[state * table.symbols + symbol];
+    }
+    
+    /** Times alternative {@code alternative} of {@code state} was executed. */
+    public long alternativeHits(int state, int alternative) {
+        var program = table.program;
+        var symbol = table.alphabet.code(program.expected(program.first(state) + alternative));
+        return hits[state * table.symbols + symbol];
+    }
+    
+    /** The counters as JSON, only states and alternatives executed at least once are listed. */
+    public String json() {
+        var text = new StringBuilder();
+        text.append("{\n");
+        text.append(String.format(Locale.ROOT, "  \"steps\": %d,\n", steps()));
+        text.append(String.format(Locale.ROOT, "  \"seconds\": %.6f,\n", seconds()));
+        text.append(String.format(Locale.ROOT, "  \"stepsPerSecond\": %.1f,\n", rate()));
+        text.append(String.format(Locale.ROOT, "  \"tapeCells\": %d,\n", cells()));
+        text.append(String.format(Locale.ROOT, "  \"headTravel\": %d,\n", travel()));
+        text.append("  \"states\": [");
+        var firstState = true;
+        for (var state = 0; state < table.states; state++) {
+            var hits = hits(state);
+            if (hits == 0)
+                continue;
+            text.append(firstState ? "\n" : ",\n");
+            firstState = false;
+            text.append(String.format("    { \"state\": %d, \"hits\": %d, \"alternatives\": [", state, hits));
+            var firstAlternative = true;
+            for (var symbol = 0; symbol < table.symbols; symbol++) {
+                var count = hits(state, symbol);
+                if (count == 0)
+                    continue;
+                text.append(firstAlternative ? " " : ", ");
+                firstAlternative = false;
+                text.append(String.format("{ \"alternative\": %d, \"symbol\": \"%s\", \"hits\": %d }",
+                    table.alternative[state * table.symbols + symbol], symbol(symbol), count));
+            }
+            text.append(" ] }");
+        }
+        text.append(firstState ? "]\n" : "\n  ]\n");
+        text.append("}\n");
+        return text.toString();
+    }
+    
+    /** The counters in the Prometheus text format, only states and alternatives executed at least once are listed. */
+    public String prometheus() {
+        var text = new StringBuilder();
+        metric(text, "turing_steps_total", "counter", "Steps executed.", String.format("%d", steps()));
+        metric(text, "turing_run_seconds_total", "counter", "Time spent running.", String.format(Locale.ROOT, "%.6f", seconds()));
+        metric(text, "turing_steps_per_second", "gauge", "Steps per second of running time.", String.format(Locale.ROOT, "%.1f", rate()));
+        metric(text, "turing_tape_cells", "gauge", "Cells of the tape.", String.format("%d", cells()));
+        metric(text, "turing_head_travel_total", "counter", "Distance moved by the head in cells.", String.format("%d", travel()));
+        
+        header(text, "turing_state_hits_total", "counter", "Steps executed per state.");
+        for (var state = 0; state < table.states; state++) {
+            var hits = hits(state);
+            if (hits != 0) {
+                text.append(String.format("turing_state_hits_total{state=\"%d\"} %d\n", state, hits));
+            }
+        }
+        header(text, "turing_alternative_hits_total", "counter", "Steps executed per alternative.");
+        for (var state = 0; state < table.states; state++) {
+            for (var symbol = 0; symbol < table.symbols; symbol++) {
+                var hits = hits(state, symbol);
+                if (hits != 0) {
+                    text.append(String.format("turing_alternative_hits_total{state=\"%d\",alternative=\"%d\",symbol=\"%s\"} %d\n",
+                        state, table.alternative[state * table.symbols + symbol], symbol(symbol), hits));
+                }
+            }
+        }
+        return text.toString();
+    }
+    
+    private static void metric(StringBuilder text, String name, String type, String help, String value) {
+        header(text, name, type, help);
+        text.append(name).append(' ').append(value).append('\n');
+    }
+    
+    private static void header(StringBuilder text, String name, String type, String help) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+    
+    /** The symbol as written in programs, {@code B} for the blank, escaped for a quoted string. */
+    private String symbol(int code) {
+        var symbol = table.alphabet.symbol(code);
+        if (symbol == Alphabet.BLANK)
+            return "B";
+        return symbol == '"' || symbol == '\\' ? "\\" + symbol : String.valueOf(symbol);
+    }
+}
@@ -1,94 +1,149 @@
 package cfh.turing;
 
 import static java.util.Objects.*;
-import static java.util.stream.Collectors.*;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.CharBuffer;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.NoSuchElementException;
 
-
+/**
+ * A parsed program, stored column-wise: one primitive array per field, indexed by alternative, and
+ * the index of the first alternative of each state. {@link State} and {@link Alternative} are views
+ * created on demand.
+ */
 public class Program implements Positionable {
     
-    static Program parse(CharBuffer text) throws ParseException {
-        int start = text.position();
-        if (!text.hasRemaining() || text.get() != '(') 
-            throw new ParseException("reading program, missing '('", start);
-        
-        var labels = new HashMap<String, Integer>();
-        var position = new Position(start);
-        var program = new Program(position);
-        while (text.hasRemaining()) {
-            text.mark();
-            var ch = text.get();
-            switch (ch) {
-                case ' ':
-                case '\r':
-                case '\n':
-                    break;
-                case ';': 
-                    while (text.hasRemaining() && text.get() != '\n') {
-                        text.mark();
-                    }
-                    text.reset();
-                    break;
-                case '"':
-                    var startPosition = text.position();
-                    StringBuilder builder = new StringBuilder();
-                    while (text.hasRemaining()) {
-                        var c = text.get();
-                        if (c == '"') {
-                            var label = builder.toString();
-                            if (labels.containsKey(label))
-                                throw new ParseException("duplicate label \"" + label + "\"", startPosition);
-                            labels.put(label, program.stateCount());
-                            break;
-                        } else if (c == '\r' || c == '\n') {
-                            throw new ParseException("label not terminated at end of line", startPosition);
-                        } else {
-                            builder.append(c);
-                        }
-                    }
-                    break;
-                case '(':
-                    text.reset();
-                    var state = State.parse(text);
-                    program.add(state);
-                    break;
-                case ')':
-                    position.end(text.position());
-                    return resolve(program, labels);
-                default:
-                    throw new ParseException(String.format("reading program, unrecognized character '%s' (0x%2x)", ch, (int)ch), text.position()-1);
-            }
-        }
-        throw new ParseException("unexpected end of text reading program", text.position()-1);
+    private static final Command[] COMMANDS = Command.values();
+    
+    public static Program parseText(CharBuffer text) throws ParseException {
+        try (var reader = ProgramReader.of(text)) {
+            return reader.read();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
     }
-
-    private static Program resolve(Program program, HashMap<String, Integer> labels) throws ParseException {
-        for (var i = 0; i < program.stateCount(); i++) {
-            var state = program.state(i);
-            for (var j = 0; j < state.alternativesCount(); j++) {
-                var alt = state.alternative(j);
-                alt.resolve(i, labels);
+    
+    /**
+     * Re-parses the program after the text between {@code from} and {@code oldTo} (in the text of
+     * {@code old}) was replaced by the text up to {@code newTo}. Only the states and labels touching
+     * the edit are parsed again, the others are shifted and, if they use labels, resolved again.
+     * Falls back to parsing the whole text if the edit is not inside the program's states.
+     */
+    public static Program reparse(Program old, CharBuffer text, int from, int oldTo, int newTo) throws ParseException {
+        if (old == null || from <= old.position.start() || oldTo >= old.position.end() - 1)
+            return parseText(text);
+        var delta = newTo - oldTo;
+        var count = old.stateCount();
+        
+        // first state ending after the edit start, last state starting before the edit end
+        var first = 0;
+        for (var high = count; first < high; ) {
+            var mid = (first + high) >>> 1;
+            if (old.stateEnd[mid] > from) {
+                high = mid;
+            } else {
+                first = mid + 1;
+            }
+        }
+        var last = first;
+        for (var high = count; last < high; ) {
+            var mid = (last + high) >>> 1;
+            if (old.stateStart[mid] < oldTo) {
+                last = mid + 1;
+            } else {
+                high = mid;
             }
         }
-        return program;
+        var regionStart = first == 0 ? old.position.start() + 1 : old.stateEnd[first-1];
+        var regionEnd = last == count ? old.position.end() - 1 : old.stateStart[last];
+        
+        var builder = new Builder();
+        builder.alphabet(old.alphabet);
+        builder.copy(old, 0, first, 0);
+        for (var label : old.labels) {
+            if (label.position < regionStart) {
+                builder.labels.add(label);
+            }
+        }
+        // the full parse must stay out of the try, it would be run again on the consumed text
+        boolean local;
+        var region = text.duplicate();
+        region.limit(regionEnd + delta).position(regionStart);
+        try (var reader = ProgramReader.of(region)) {
+            local = !reader.states(builder);
+        } catch (ParseException ex) {
+            local = false;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        if (!local)
+            return parseText(text);
+        var added = builder.states - last;
+        builder.copy(old, last, count, delta);
+        for (var label : old.labels) {
+            if (label.position >= regionEnd) {
+                builder.labels.add(new Label(label.name, label.index + added, label.position + delta));
+            }
+        }
+        
+        var position = new Position(old.position.start());
+        position.end(old.position.end() + delta);
+        try {
+            return builder.build(position);
+        } catch (ParseException ex) {
+            // report errors the same way a full parse does
+            return parseText(text);
+        }
     }
-
+    
     final Position position;
     
-    private final List<State> states = new ArrayList<>();
+    private final Alphabet alphabet;
+    private final int tapes;
     
-    private Program(Position position) {
-        this.position = requireNonNull(position);
-    }
+    // per state, first has one more entry: the end of the last state's alternatives
+    private final int[] first;
+    private final int[] stateStart;
+    private final int[] stateEnd;
     
-    private void add(State state) {
-        states.add(requireNonNull(state));
+    // per alternative, the symbols and commands have one entry per tape: alternative * tapes + tape
+    private final char[] expected;
+    private final char[] replace;
+    private final byte[] command;
+    private final int[] jump;
+    private final int[] start;
+    private final int[] end;
+    
+    // sorted indices of the alternatives jumping to a label, and the label names
+    private final int[] targets;
+    private final String[] targetNames;
+    
+    private final List<Label> labels;
+    
+    private Program(Position position, Builder builder, int[] jump, List<Label> labels) {
+        var states = builder.states;
+        var alternatives = builder.alternatives;
+        this.position = requireNonNull(position);
+        alphabet = builder.alphabet;
+        tapes = builder.tapes();
+        first = Arrays.copyOf(builder.first, states + 1);
+        stateStart = Arrays.copyOf(builder.stateStart, states);
+        stateEnd = Arrays.copyOf(builder.stateEnd, states);
+        expected = Arrays.copyOf(builder.expected, alternatives * tapes);
+        replace = Arrays.copyOf(builder.replace, alternatives * tapes);
+        command = Arrays.copyOf(builder.command, alternatives * tapes);
+        this.jump = jump;
+        start = Arrays.copyOf(builder.start, alternatives);
+        end = Arrays.copyOf(builder.end, alternatives);
+        targets = Arrays.copyOf(builder.targets, builder.targetCount);
+        targetNames = Arrays.copyOf(builder.targetNames, builder.targetCount);
+        this.labels = labels;
     }
     
     @Override
@@ -98,23 +153,351 @@ public class Program implements Positionable {
     
     @Override
     public String toString() {
-        return  states
-                .stream()
-                .map(State::toString)
-                .collect(joining("\n ", "(\n ", "\n)"));
+        var text = new StringBuilder();
+        if (!alphabet.equals(Alphabet.DEFAULT)) {
+            text.append(Alphabet.KEYWORD).append(" \"").append(alphabet).append("\"\n");
+        }
+        text.append('(');
+        for (var s = 0; s < stateCount(); s++) {
+            text.append("\n ").append(new State(this, s));
+        }
+        return text.append("\n)").toString();
     }
-
+    
     public int stateCount() {
-        return states.size();
+        return stateStart.length;
+    }
+    
+    /** The symbols of the tapes, declared in front of the program or {@link Alphabet#DEFAULT}. */
+    public Alphabet alphabet() {
+        return alphabet;
+    }
+    
+    /** Number of tapes the alternatives read, write and move, 1 for a single-tape program. */
+    public int tapes() {
+        return tapes;
     }
     
     public State state(int index) throws NoSuchElementException {
-        if (index < 0 || index >= states.size())
+        if (index < 0 || index >= stateCount())
             throw new NoSuchElementException("invalid state index: " + index);
-        return states.get(index);
+        return new State(this, index);
     }
-
+    
     public boolean isEmpty() {
-        return states.isEmpty();
+        return stateCount() == 0;
+    }
+    
+    /** Index of the first alternative of {@code state}, {@code first(state+1)} is the end of its alternatives. */
+    int first(int state) {
+        return first[state];
+    }
+    
+    int stateStart(int state) {
+        return stateStart[state];
+    }
+    
+    int stateEnd(int state) {
+        return stateEnd[state];
+    }
+    
+    /** Symbol expected on the first tape. */
+    char expected(int alternative) {
+        return expected[alternative * tapes];
+    }
+    
+    char expected(int alternative, int tape) {
+        return expected[alternative * tapes + tape];
+    }
+    
+    char replace(int alternative) {
+        return replace[alternative * tapes];
+    }
+    
+    char replace(int alternative, int tape) {
+        return replace[alternative * tapes + tape];
+    }
+    
+    Command command(int alternative) {
+        return COMMANDS[command[alternative * tapes]];
+    }
+    
+    Command command(int alternative, int tape) {
+        return COMMANDS[command[alternative * tapes + tape]];
+    }
+    
+    int jump(int alternative) {
+        return jump[alternative];
+    }
+    
+    int start(int alternative) {
+        return start[alternative];
+    }
+    
+    int end(int alternative) {
+        return end[alternative];
+    }
+    
+    /** The label the alternative jumps to, or {@code null}. */
+    String label(int alternative) {
+        var index = Arrays.binarySearch(targets, alternative);
+        return index < 0 ? null : targetNames[index];
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    static final class Label {
+        
+        final String name;
+        final int index;
+        final int position;
+        
+        Label(String name, int index, int position) {
+            this.name = name;
+            this.index = index;
+            this.position = position;
+        }
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    /**
+     * Collects states and their alternatives in growing arrays; {@link #build(Position)} resolves
+     * the labels and trims the arrays. Positions of generated programs are -1. The first alternative
+     * sets the number of tapes, all others must have the same.
+     */
+    static final class Builder {
+        
+        private Alphabet alphabet = Alphabet.DEFAULT;
+        
+        // 0 until the first alternative
+        private int tapes = 0;
+        
+        private int states = 0;
+        private int[] first = new int[17];
+        private int[] stateStart = new int[16];
+        private int[] stateEnd = new int[16];
+        
+        private int alternatives = 0;
+        private char[] expected = new char[64];
+        private char[] replace = new char[64];
+        private byte[] command = new byte[64];
+        private int[] jump = new int[64];
+        private int[] start = new int[64];
+        private int[] end = new int[64];
+        
+        private int targetCount = 0;
+        private int[] targets = new int[16];
+        private String[] targetNames = new String[16];
+        
+        private final HashMap<String, String> names = new HashMap<>();
+        private final List<Label> labels = new ArrayList<>();
+        
+        int states() {
+            return states;
+        }
+        
+        Alphabet alphabet() {
+            return alphabet;
+        }
+        
+        /** Sets the alphabet, before the first alternative is added. */
+        void alphabet(Alphabet alphabet) {
+            if (alternatives != 0)
+                throw new IllegalStateException("alphabet set after the first alternative");
+            this.alphabet = requireNonNull(alphabet);
+        }
+        
+        int tapes() {
+            return Math.max(tapes, 1);
+        }
+        
+        private void tapes(int count) {
+            if (tapes != 0 && tapes != count)
+                throw new IllegalArgumentException(String.format("alternative for %d tapes in a program for %d", count, tapes));
+            tapes = count;
+        }
+        
+        /** Starts a new state at {@code position}. */
+        void state(int position) {
+            if (states == stateStart.length) {
+                var length = states * 2;
+                first = Arrays.copyOf(first, length + 1);
+                stateStart = Arrays.copyOf(stateStart, length);
+                stateEnd = Arrays.copyOf(stateEnd, length);
+            }
+            stateStart[states] = position;
+            stateEnd[states] = -1;
+            states += 1;
+            first[states] = alternatives;
+        }
+        
+        /** Ends the current state at {@code position}. */
+        void end(int position) {
+            stateEnd[states-1] = position;
+        }
+        
+        /**
+         * Adds an alternative to the current state; {@code label}, if not {@code null}, is the jump target.
+         * @throws IllegalArgumentException if the state already has an alternative for {@code expected}
+         */
+        void alternative(int from, int to, char expected, char replace, Command command, int jump, String label) {
+            tapes(1);
+            check(expected);
+            check(replace);
+            for (var i = first[states-1]; i < alternatives; i++) {
+                if (this.expected[i] == expected)
+                    throw new IllegalArgumentException(String.format("duplicate alternative for '%s' (0x%2x)",
+                        expected, (int)expected));
+            }
+            if ((expected == '*') != (replace == '*'))
+                throw new IllegalArgumentException("invalid replace '" + replace + "' for '" + expected + "'");
+            grow();
+            this.expected[alternatives] = expected;
+            this.replace[alternatives] = replace;
+            this.command[alternatives] = (byte) command.ordinal();
+            add(from, to, jump, label);
+        }
+        
+        /**
+         * Adds an alternative for as many tapes as there are {@code expected} symbols, with a
+         * {@code replace} symbol and a command for each tape.
+         * @throws IllegalArgumentException if the state already has an alternative for the same
+         *         symbols or the program has another number of tapes
+         */
+        void alternative(int from, int to, char[] expected, char[] replace, Command[] command, int jump, String label) {
+            var count = expected.length;
+            if (replace.length != count || command.length != count)
+                throw new IllegalArgumentException(String.format("%d expected symbols, %d replace symbols and %d commands",
+                    count, replace.length, command.length));
+            tapes(count);
+            for (var t = 0; t < count; t++) {
+                check(expected[t]);
+                check(replace[t]);
+            }
+            for (var i = first[states-1]; i < alternatives; i++) {
+                if (Arrays.equals(this.expected, i * count, (i + 1) * count, expected, 0, count))
+                    throw new IllegalArgumentException(String.format("duplicate alternative for [%s]", symbols(expected)));
+            }
+            for (var t = 0; t < count; t++) {
+                if ((expected[t] == '*') != (replace[t] == '*'))
+                    throw new IllegalArgumentException("invalid replace '" + replace[t] + "' for '" + expected[t] + "'");
+            }
+            grow();
+            var index = alternatives * count;
+            for (var t = 0; t < count; t++) {
+                this.expected[index + t] = expected[t];
+                this.replace[index + t] = replace[t];
+                this.command[index + t] = (byte) command[t].ordinal();
+            }
+            add(from, to, jump, label);
+        }
+        
+        private void check(char symbol) {
+            if (alphabet.code(symbol) < 0)
+                throw new IllegalArgumentException(String.format("symbol '%s' (0x%2x) not in alphabet \"%s\"",
+                    symbol, (int)symbol, alphabet));
+        }
+        
+        private static String symbols(char[] symbols) {
+            var text = new StringBuilder(symbols.length * 2);
+            for (var symbol : symbols) {
+                text.append(text.length() == 0 ? "" : " ").append(symbol == ' ' ? 'B' : symbol);
+            }
+            return text.toString();
+        }
+        
+        private void add(int from, int to, int jump, String label) {
+            this.jump[alternatives] = jump;
+            start[alternatives] = from;
+            end[alternatives] = to;
+            if (label != null) {
+                target(alternatives, label);
+            }
+            alternatives += 1;
+            first[states] = alternatives;
+        }
+        
+        private void grow() {
+            if (alternatives == jump.length) {
+                var length = alternatives * 2;
+                jump = Arrays.copyOf(jump, length);
+                start = Arrays.copyOf(start, length);
+                end = Arrays.copyOf(end, length);
+            }
+            var size = (alternatives + 1) * tapes;
+            if (size > expected.length) {
+                var length = Math.max(size, expected.length * 2);
+                expected = Arrays.copyOf(expected, length);
+                replace = Arrays.copyOf(replace, length);
+                command = Arrays.copyOf(command, length);
+            }
+        }
+        
+        private void target(int alternative, String label) {
+            if (targetCount == targets.length) {
+                targets = Arrays.copyOf(targets, targetCount * 2);
+                targetNames = Arrays.copyOf(targetNames, targetCount * 2);
+            }
+            targets[targetCount] = alternative;
+            // one String per label name, not one per alternative jumping to it
+            targetNames[targetCount] = names.computeIfAbsent(label, name -> name);
+            targetCount += 1;
+        }
+        
+        /** Defines a label for the next state. */
+        void label(String name, int position) {
+            labels.add(new Label(name, states, position));
+        }
+        
+        /** Appends the states {@code from} to {@code to} of {@code program}, shifting their positions by {@code delta}. */
+        void copy(Program program, int from, int to, int delta) {
+            var offset = alternatives - program.first[from];
+            if (program.first[from] < program.first[to]) {
+                tapes(program.tapes);
+            }
+            var count = program.tapes;
+            for (var s = from; s < to; s++) {
+                state(program.stateStart[s] + delta);
+                for (var a = program.first[s]; a < program.first[s+1]; a++) {
+                    grow();
+                    System.arraycopy(program.expected, a * count, expected, alternatives * count, count);
+                    System.arraycopy(program.replace, a * count, replace, alternatives * count, count);
+                    System.arraycopy(program.command, a * count, command, alternatives * count, count);
+                    jump[alternatives] = program.jump[a];
+                    start[alternatives] = program.start[a] + delta;
+                    end[alternatives] = program.end[a] + delta;
+                    alternatives += 1;
+                }
+                first[states] = alternatives;
+                end(program.stateEnd[s] + delta);
+            }
+            var t = Arrays.binarySearch(program.targets, program.first[from]);
+            for (t = t < 0 ? -t - 1 : t; t < program.targets.length && program.targets[t] < program.first[to]; t++) {
+                target(program.targets[t] + offset, program.targetNames[t]);
+            }
+        }
+        
+        /** Resolves the labels, jumps to labels become relative to their state. */
+        Program build(Position position) throws ParseException {
+            var map = new HashMap<String, Integer>();
+            for (var label : labels) {
+                if (map.put(label.name, label.index) != null)
+                    throw new ParseException("duplicate label \"" + label.name + "\"", label.position);
+            }
+            var resolved = Arrays.copyOf(jump, alternatives);
+            var state = 0;
+            for (var t = 0; t < targetCount; t++) {
+                var alternative = targets[t];
+                while (first[state+1] <= alternative) {
+                    state += 1;
+                }
+                var index = map.get(targetNames[t]);
+                if (index == null)
+                    throw new ParseException("unknown label \"" + targetNames[t] + "\"", end[alternative]);
+                resolved[alternative] = index - state;
+            }
+            return new Program(position, this, resolved, List.copyOf(labels));
+        }
     }
 }
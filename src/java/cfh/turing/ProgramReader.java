@@ -0,0 +1,543 @@
+package cfh.turing;
+
+import static java.nio.charset.StandardCharsets.*;
+import static java.util.Objects.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.HashSet;
+
+/**
+ * Single pass parser reading a program from a {@link Reader} through a bounded buffer,
+ * from a memory-mapped file or from a {@link CharBuffer}, the parser behind
+ * {@link Program#parseText(CharBuffer)}; labels may be used before they are defined and are
+ * fixed up once the whole program was read.
+ */
+public final class ProgramReader implements Closeable {
+    
+    public static final int BUFFER = 1 << 16;
+    
+    private static final int REGION = 1 << 26;
+    
+    /** Reads the program from a memory-mapped UTF-8 file. */
+    public static ProgramReader open(Path path) throws IOException {
+        return new ProgramReader(new MappedReader(FileChannel.open(path, StandardOpenOption.READ)));
+    }
+    
+    /** Reads the program from the remaining characters of {@code text}, positions are indices into it. */
+    static ProgramReader of(CharBuffer text) {
+        return new ProgramReader(new BufferReader(text), text.position(), Math.max(1, Math.min(BUFFER, text.remaining())));
+    }
+    
+    private final Reader reader;
+    private final char[] buffer;
+    private int length = 0;
+    private int index = 0;
+    private int position;
+    
+    private long nanos;
+    private int states;
+    
+    public ProgramReader(Reader reader) {
+        this(reader, 0, BUFFER);
+    }
+    
+    private ProgramReader(Reader reader, int position, int size) {
+        this.reader = requireNonNull(reader);
+        this.position = position;
+        buffer = new char[size];
+    }
+    
+    /** Number of characters read. */
+    public int chars() {
+        return position;
+    }
+    
+    /** Nanoseconds spent in {@link #read()}. */
+    public long nanos() {
+        return nanos;
+    }
+    
+    public String throughput() {
+        var seconds = nanos / 1e9;
+        return String.format("%d states, %d chars in %.1f ms, %.1f MB/s",
+            states, position, seconds * 1e3, seconds == 0 ? 0.0 : position / seconds / (1 << 20));
+    }
+    
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+    
+    public Program read() throws IOException, ParseException {
+        var start = System.nanoTime();
+        try {
+            Program program = null;
+            Alphabet alphabet = null;
+            int ch;
+            while ((ch = next()) != -1) {
+                switch (ch) {
+                    case ' ':
+                    case '\r':
+                    case '\n':
+                        break;
+                    case ';':
+                        comment();
+                        break;
+                    case 'a':
+                        if (program != null)
+                            throw new ParseException("alphabet must be declared before the program", position-1);
+                        if (alphabet != null)
+                            throw new ParseException("alphabet already defined", position-1);
+                        alphabet = alphabet();
+                        break;
+                    case '(':
+                        if (program != null)
+                            throw new ParseException("program already defined", position-1);
+                        program = program(alphabet == null ? Alphabet.DEFAULT : alphabet);
+                        break;
+                    default:
+                        throw unrecognized("expecting program", ch);
+                }
+            }
+            if (program == null)
+                throw new ParseException("end of text expecting program", position-1);
+            states = program.stateCount();
+            return program;
+        } finally {
+            nanos += System.nanoTime() - start;
+        }
+    }
+    
+    private int next() throws IOException {
+        if (index == length) {
+            length = reader.read(buffer);
+            index = 0;
+            if (length <= 0) {
+                length = 0;
+                return -1;
+            }
+        }
+        position += 1;
+        return buffer[index++];
+    }
+    
+    /** Skips a comment up to, but not including, the end of line; {@code false} if the text ends first. */
+    private boolean comment() throws IOException {
+        while (true) {
+            if (index == length) {
+                length = reader.read(buffer);
+                index = 0;
+                if (length <= 0) {
+                    length = 0;
+                    return false;
+                }
+            }
+            if (buffer[index] == '\n')
+                return true;
+            index += 1;
+            position += 1;
+        }
+    }
+    
+    private ParseException unrecognized(String context, int ch) {
+        return new ParseException(String.format("%s, unrecognized character '%s' (0x%2x)", context, (char) ch, ch), position-1);
+    }
+    
+    /** Reads an alphabet declaration after its first character. */
+    private Alphabet alphabet() throws IOException, ParseException {
+        var start = position-1;
+        for (var i = 1; i < Alphabet.KEYWORD.length(); i++) {
+            if (next() != Alphabet.KEYWORD.charAt(i))
+                throw new ParseException("expecting program or alphabet", start);
+        }
+        int ch;
+        do {
+            ch = next();
+            if (ch == -1)
+                throw new ParseException("unexpected end of text reading alphabet", position-1);
+        } while (ch == ' ');
+        if (ch != '"')
+            throw new ParseException("reading alphabet, missing '\"'", position-1);
+        var symbols = new StringBuilder();
+        while ((ch = next()) != '"') {
+            if (ch == -1)
+                throw new ParseException("unexpected end of text reading alphabet", position-1);
+            if (ch == '\n' || ch == '\r')
+                throw new ParseException("alphabet not terminated at end of line", start);
+            symbols.append((char) ch);
+        }
+        return Alphabet.of(symbols.toString(), start);
+    }
+    
+    private Program program(Alphabet alphabet) throws IOException, ParseException {
+        var position = new Position(this.position-1);
+        var builder = new Program.Builder();
+        builder.alphabet(alphabet);
+        if (!states(builder))
+            throw new ParseException("unexpected end of text reading program", this.position-1);
+        position.end(this.position);
+        // forward references: labels are only known now
+        return builder.build(position);
+    }
+    
+    /**
+     * Reads labels and states up to the closing {@code ')'} of the program, returning {@code true},
+     * or up to the end of the text, returning {@code false}. A comment or label running into the end
+     * of the text is an error, the part of a program {@link Program#reparse re-parsed} would end inside it.
+     */
+    boolean states(Program.Builder builder) throws IOException, ParseException {
+        var names = new HashSet<String>();
+        var text = new StringBuilder();
+        int ch;
+        while ((ch = next()) != -1) {
+            switch (ch) {
+                case ' ':
+                case '\r':
+                case '\n':
+                    break;
+                case ';':
+                    if (!comment())
+                        throw new ParseException("unexpected end of text reading program", this.position-1);
+                    break;
+                case '"':
+                    var startPosition = this.position;
+                    text.setLength(0);
+                    while (true) {
+                        var c = next();
+                        if (c == -1)
+                            throw new ParseException("unexpected end of text reading program", this.position-1);
+                        if (c == '"') {
+                            var label = text.toString();
+                            if (!names.add(label))
+                                throw new ParseException("duplicate label \"" + label + "\"", startPosition);
+                            builder.label(label, startPosition);
+                            break;
+                        } else if (c == '\r' || c == '\n') {
+                            throw new ParseException("label not terminated at end of line", startPosition);
+                        } else {
+                            text.append((char) c);
+                        }
+                    }
+                    break;
+                case '(':
+                    state(builder, text);
+                    break;
+                case ')':
+                    return true;
+                default:
+                    throw unrecognized("reading program", ch);
+            }
+        }
+        return false;
+    }
+    
+    private void state(Program.Builder builder, StringBuilder text) throws IOException, ParseException {
+        builder.state(this.position-1);
+        int ch;
+        while ((ch = next()) != -1) {
+            switch (ch) {
+                case ' ':
+                case '\r':
+                case '\n':
+                    break;
+                case ';':
+                    comment();
+                    break;
+                case '(':
+                    try {
+                        alternative(builder, text);
+                    } catch (IllegalArgumentException ex) {
+                        throw (ParseException) new ParseException("reading state, " + ex.getMessage(), this.position-1).initCause(ex);
+                    }
+                    break;
+                case ')':
+                    builder.end(this.position);
+                    return;
+                default:
+                    throw unrecognized("reading state", ch);
+            }
+        }
+        throw new ParseException("unexpected end of text reading state", this.position-1);
+    }
+    
+    private void alternative(Program.Builder builder, StringBuilder jumpText) throws IOException, ParseException {
+        var start = this.position-1;
+        char expected = 0;
+        char replace = 0;
+        Command command = null;
+        // an alternative for several tapes has groups like [0 B] instead of single symbols and commands
+        char[] expectedGroup = null;
+        char[] replaceGroup = null;
+        Command[] commandGroup = null;
+        jumpText.setLength(0);
+        var jumping = false;
+        int next;
+        while ((next = next()) != -1) {
+            var ch = (char) next;
+            switch (ch) {
+                case ' ':
+                case '\r':
+                case '\n':
+                    break;
+                case ';':
+                    comment();
+                    break;
+                case ')':
+                    if (expected == 0)
+                        throw new ParseException("missing expected symbol", this.position-1);
+                    if (replace == 0)
+                        throw new ParseException("missing replace symbol", this.position-1);
+                    if (command == null)
+                        throw new ParseException("missing command", this.position-1);
+                    if (!jumping)
+                        throw new ParseException("missing jump distance", this.position-1);
+                    if ((expectedGroup == null) != (replaceGroup == null) || (expectedGroup == null) != (commandGroup == null))
+                        throw new ParseException("either all or none of the symbols and the command must be groups", this.position-1);
+                    if (expectedGroup != null && (replaceGroup.length != expectedGroup.length || commandGroup.length != expectedGroup.length))
+                        throw new ParseException(String.format("groups of %d, %d and %d entries", 
+                            expectedGroup.length, replaceGroup.length, commandGroup.length), this.position-1);
+                    var label = jumpText.charAt(0) == '"' ? jumpText.substring(1) : null;
+                    var jump = 0;
+                    if (label == null) {
+                        try {
+                            jump = Integer.parseInt(jumpText.toString());
+                        } catch (NumberFormatException ex) {
+                            throw (ParseException) new ParseException("invalid jump " + jumpText, this.position-1).initCause(ex);
+                        }
+                    }
+                    if (expectedGroup == null) {
+                        builder.alternative(start, this.position, expected, replace, command, jump, label);
+                    } else {
+                        builder.alternative(start, this.position, expectedGroup, replaceGroup, commandGroup, jump, label);
+                    }
+                    return;
+                default:
+                    if (expected == 0) {
+                        if (ch == 'B') {
+                            expected = ' ';
+                            break;
+                        }
+                        if (builder.alphabet().code(ch) > 0) {
+                            expected = ch;
+                            break;
+                        }
+                        if (ch == '[') {
+                            expectedGroup = symbols(builder.alphabet());
+                            expected = expectedGroup[0];
+                            break;
+                        }
+                    } else if (replace == 0) {
+                        if (ch == 'B') {
+                            replace = ' ';
+                            break;
+                        }
+                        if (builder.alphabet().code(ch) > 0) {
+                            replace = ch;
+                            if ((expected == '*') != (replace == '*'))
+                                throw new ParseException("invalid replace '" + replace + "'", this.position-1);
+                            break;
+                        }
+                        if (ch == '[') {
+                            replaceGroup = symbols(builder.alphabet());
+                            replace = replaceGroup[0];
+                            break;
+                        }
+                    } else if (command == null) {
+                        if (ch == '[') {
+                            var group = group();
+                            commandGroup = new Command[group.length()];
+                            for (var i = 0; i < commandGroup.length; i++) {
+                                commandGroup[i] = command(group.charAt(i));
+                            }
+                            command = commandGroup[0];
+                            break;
+                        }
+                        command = command(ch);
+                        break;
+                    } else if (!jumping) {
+                        jumping = true;
+                        if (ch == '"') {
+                            var startPosition = this.position;
+                            jumpText.append(ch);
+                            int c;
+                            while ((c = next()) != -1) {
+                                if (c == '"' )
+                                    break;
+                                if (c == '\n' || c == '\r')
+                                    throw new ParseException("label not terminated at end of line", startPosition);
+                                jumpText.append((char) c);
+                            }
+                            break;
+                        } else if (('0' <= ch && ch <= '9') || ch == '+' || ch == '-') {
+                            jumpText.append(ch);
+                            break;
+                        }
+                    } else {
+                        if ('0' <= ch && ch <= '9') {
+                            jumpText.append(ch);
+                            break;
+                        }
+                    }
+                    throw unrecognized("reading alternative", ch);
+            }
+        }
+        throw new ParseException("unexpected end of text reading alternative", this.position-1);
+    }
+    
+    private Command command(char ch) throws ParseException {
+        switch (ch) {
+            case 'L': return Command.LEFT;
+            case 'R': return Command.RIGHT;
+            case 'N': return Command.NOP;
+            case 'H': return Command.HALT;
+            default: throw new ParseException("invalid command '" + ch + "'", this.position-1);
+        }
+    }
+    
+    /** Reads the symbols of a group after its {@code '['}, {@code B} is the blank. */
+    private char[] symbols(Alphabet alphabet) throws IOException, ParseException {
+        var group = group();
+        var symbols = new char[group.length()];
+        for (var i = 0; i < symbols.length; i++) {
+            var ch = group.charAt(i);
+            if (ch == 'B') {
+                symbols[i] = ' ';
+            } else if (alphabet.code(ch) > 0) {
+                symbols[i] = ch;
+            } else
+                throw new ParseException("invalid symbol '" + ch + "'", this.position-1);
+        }
+        return symbols;
+    }
+    
+    /** Reads a group up to its {@code ']'}, without the blanks between the entries. */
+    private String group() throws IOException, ParseException {
+        var start = this.position-1;
+        var group = new StringBuilder();
+        int ch;
+        while ((ch = next()) != -1) {
+            switch (ch) {
+                case ' ':
+                case '\r':
+                case '\n':
+                    break;
+                case ']':
+                    if (group.length() == 0)
+                        throw new ParseException("empty group", start);
+                    return group.toString();
+                default:
+                    group.append((char) ch);
+                    break;
+            }
+        }
+        throw new ParseException("unexpected end of text reading group", this.position-1);
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    /** Reads the remaining characters of a buffer, advancing its position. */
+    private static final class BufferReader extends Reader {
+        
+        private final CharBuffer text;
+        
+        BufferReader(CharBuffer text) {
+            this.text = requireNonNull(text);
+        }
+        
+        @Override
+        public int read(char[] chars, int off, int len) {
+            if (!text.hasRemaining())
+                return -1;
+            var count = Math.min(len, text.remaining());
+            text.get(chars, off, count);
+            return count;
+        }
+        
+        @Override
+        public void close() {
+        }
+    }
+    
+    /** Decodes a file as UTF-8, mapping it region by region and copying it through a bounded heap buffer. */
+    private static final class MappedReader extends Reader {
+        
+        private final FileChannel channel;
+        private final long size;
+        private final CharsetDecoder decoder = UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+        // the heap buffer lets the decoder use its fast array path
+        private final ByteBuffer in = ByteBuffer.allocate(BUFFER).flip();
+        private MappedByteBuffer bytes = null;
+        private long mapped = 0;
+        private boolean flushed = false;
+        
+        MappedReader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            size = channel.size();
+        }
+        
+        @Override
+        public int read(char[] chars, int off, int len) throws IOException {
+            if (flushed)
+                return -1;
+            var out = CharBuffer.wrap(chars, off, len);
+            while (out.position() == off) {
+                if (in.remaining() < 4 && !drained()) {
+                    fill();
+                }
+                var end = drained();
+                var result = decoder.decode(in, out, end);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                if (end && !in.hasRemaining()) {
+                    result = decoder.flush(out);
+                    if (result.isError()) {
+                        result.throwException();
+                    }
+                    flushed = true;
+                    return out.position() == off ? -1 : out.position() - off;
+                }
+            }
+            return out.position() - off;
+        }
+        
+        private boolean drained() {
+            return mapped == size && (bytes == null || !bytes.hasRemaining());
+        }
+        
+        private void fill() throws IOException {
+            in.compact();
+            while (in.hasRemaining() && !drained()) {
+                if (bytes == null || !bytes.hasRemaining()) {
+                    var length = Math.min(REGION, size - mapped);
+                    bytes = channel.map(FileChannel.MapMode.READ_ONLY, mapped, length);
+                    mapped += length;
+                }
+                var slice = bytes.slice();
+                var count = Math.min(in.remaining(), slice.remaining());
+                slice.limit(count);
+                in.put(slice);
+                bytes.position(bytes.position() + count);
+            }
+            in.flip();
+        }
+        
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
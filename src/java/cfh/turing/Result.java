@@ -0,0 +1,54 @@
+package cfh.turing;
+
+import static java.util.Objects.*;
+
+public class Result {
+    
+    public enum Reason {
+        HALTED,
+        /** Step budget used up. */
+        LIMIT,
+        /** Thread interrupted or run cancelled. */
+        INTERRUPTED,
+        NON_HALTING,
+        /** Paused by a {@link RunControl}, the run can be continued. */
+        PAUSED,
+        /** Time budget of a {@link RunControl} used up. */
+        TIMEOUT,
+        /** Target state of a {@link RunControl} entered. */
+        BREAKPOINT;
+    }
+
+    public final Reason reason;
+    public final long steps;
+    public final int state;
+    public final long position;
+    public final Tape tape;
+    /** Why the run never halts, only set for {@link Reason#NON_HALTING}. */
+    public final Verdict verdict;
+    
+    Result(Reason reason, long steps, int state, Tape tape) {
+        this(reason, steps, state, tape, null);
+    }
+    
+    Result(Reason reason, long steps, int state, Tape tape, Verdict verdict) {
+        if ((reason == Reason.NON_HALTING) != (verdict != null))
+            throw new IllegalArgumentException("verdict " + verdict + " for " + reason);
+        this.reason = requireNonNull(reason);
+        this.steps = steps;
+        this.state = state;
+        this.position = tape.head();
+        this.tape = tape;
+        this.verdict = verdict;
+    }
+    
+    public String text() {
+        return tape.text();
+    }
+    
+    @Override
+    public String toString() {
+        var text = String.format("%s after %d steps, state %d, position %d", reason, steps, state, position);
+        return verdict == null ? text : text + ", " + verdict;
+    }
+}
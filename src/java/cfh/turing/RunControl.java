@@ -0,0 +1,64 @@
+package cfh.turing;
+
+/**
+ * Controls a {@link Machine} run from another thread. The machine looks at the requests only every
+ * {@link #POLL} steps, so the step loop stays tight; a stopped run returns its {@link Result} and can
+ * be continued by calling {@link Machine#run(long) run} again.
+ */
+public final class RunControl {
+    
+    /** Steps between two looks at the control, and at the thread's interrupted flag. */
+    public static final long POLL = 1L << 16;
+    
+    private volatile boolean paused = false;
+    private volatile boolean cancelled = false;
+    private volatile long timeout = 0;
+    private volatile int target = -1;
+    
+    /** Stops the run with {@link Result.Reason#PAUSED}. */
+    public void pause() {
+        paused = true;
+    }
+    
+    /** Stops the run with {@link Result.Reason#INTERRUPTED}, like interrupting its thread. */
+    public void cancel() {
+        cancelled = true;
+    }
+    
+    /** Clears a pause or cancel request, before running again. */
+    public void reset() {
+        paused = false;
+        cancelled = false;
+    }
+    
+    /** Stops runs with {@link Result.Reason#TIMEOUT} after {@code millis} milliseconds, 0 for no limit. */
+    public void timeout(long millis) {
+        if (millis < 0)
+            throw new IllegalArgumentException("negative timeout: " + millis);
+        timeout = millis;
+    }
+    
+    /**
+     * Stops runs with {@link Result.Reason#BREAKPOINT} when {@code state} is entered, -1 for none.
+     * While set, the machine checks the state after every step.
+     */
+    public void target(int state) {
+        target = state;
+    }
+    
+    boolean paused() {
+        return paused;
+    }
+    
+    boolean cancelled() {
+        return cancelled;
+    }
+    
+    long timeout() {
+        return timeout;
+    }
+    
+    int target() {
+        return target;
+    }
+}
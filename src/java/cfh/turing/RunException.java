@@ -0,0 +1,13 @@
+package cfh.turing;
+
+@SuppressWarnings("serial")
+public class RunException extends Exception {
+    
+    protected RunException(String format, Object... args) {
+        super(String.format(format, args));
+    }
+    
+    Position position() {
+        return null;
+    }
+}
@@ -0,0 +1,218 @@
+package cfh.turing;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+
+public class Runner {
+    
+    private static final String USAGE = "usage: Runner [-steps <max>] [-trace off|full|<interval>] [-record <directory>] [-metrics <directory>] [-decide [-bouncers]] "
+        + "[-mapped <directory> | -block <size> [-cache <entries>] | -compiled] <program> <tape>...";
+
+    public static void main(String[] args) {
+        System.exit(new Runner().run(args));
+    }
+    
+    static Program load(Path path) throws IOException, ParseException {
+        return load(path, null);
+    }
+    
+    /** Parses the file in a single streaming pass, printing the parse throughput to {@code log} if not {@code null}. */
+    static Program load(Path path, PrintStream log) throws IOException, ParseException {
+        try (var reader = ProgramReader.open(path)) {
+            var program = reader.read();
+            if (log != null) {
+                log.printf("%s: parsed %s%n", path, reader.throughput());
+            }
+            return program;
+        } catch (ParseException ex) {
+            throw (ParseException) new ParseException(
+                String.format("%s: %s at position %d", path, ex.getMessage(), ex.getErrorOffset()), ex.getErrorOffset())
+            .initCause(ex);
+        }
+    }
+    
+    private long maxSteps = Long.MAX_VALUE;
+    private String trace = "off";
+    private Path record = null;
+    private Path metrics = null;
+    private Path mapped = null;
+    private int block = 0;
+    private int cache = BlockMachine.DEFAULT_CACHE;
+    private boolean compiled = false;
+    private boolean decide = false;
+    private boolean bouncers = false;
+    
+    private Program program;
+    private Table table;
+    private CompiledMachine.Code code = null;
+    
+    private Runner() {
+    }
+    
+    private int run(String[] args) {
+        var index = 0;
+        try {
+            for (; index < args.length && args[index].startsWith("-"); index++) {
+                switch (args[index]) {
+                    case "-steps":
+                        maxSteps = Long.parseLong(args[++index]);
+                        break;
+                    case "-trace":
+                        trace = args[++index];
+                        Trace.interval(trace);
+                        break;
+                    case "-record":
+                        record = Paths.get(args[++index]);
+                        break;
+                    case "-metrics":
+                        metrics = Paths.get(args[++index]);
+                        break;
+                    case "-mapped":
+                        mapped = Paths.get(args[++index]);
+                        break;
+                    case "-block":
+                        block = Integer.parseInt(args[++index]);
+                        break;
+                    case "-cache":
+                        cache = Integer.parseInt(args[++index]);
+                        break;
+                    case "-compiled":
+                        compiled = true;
+                        break;
+                    case "-decide":
+                        decide = true;
+                        break;
+                    case "-bouncers":
+                        bouncers = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unrecognized option " + args[index]);
+                }
+            }
+            if (block != 0 && (mapped != null || compiled))
+                throw new IllegalArgumentException("-block cannot be combined with -mapped or -compiled");
+            if (record != null && trace.equals("off")) {
+                trace = "full";
+            }
+            if (bouncers && !decide)
+                throw new IllegalArgumentException("-bouncers only adds the heuristic to -decide");
+            if (!trace.equals("off") && (block != 0 || compiled))
+                throw new IllegalArgumentException("-trace is only supported by the interpreter");
+            if (decide && (block != 0 || compiled))
+                throw new IllegalArgumentException("-decide is only supported by the interpreter");
+            if (metrics != null && (block != 0 || compiled))
+                throw new IllegalArgumentException("-metrics is only supported by the interpreter");
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+        if (args.length - index < 2) {
+            System.err.println(USAGE);
+            return 2;
+        }
+        
+        try {
+            program = load(Paths.get(args[index++]), System.err);
+            table = Table.compile(program);
+            if (table.tapes() > 1 && (block != 0 || compiled || mapped != null || !trace.equals("off") || decide || metrics != null))
+                throw new IllegalArgumentException("program for " + table.tapes() + " tapes, it only runs without "
+                    + "-block, -compiled, -mapped, -trace, -record, -decide and -metrics");
+            if (compiled) {
+                code = CompiledMachine.compile(table);
+            }
+        } catch (IOException | ParseException | IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            return 2;
+        }
+        
+        var out = new BufferedWriter(new OutputStreamWriter(System.out));
+        var failed = false;
+        for (; index < args.length; index++) {
+            var path = Paths.get(args[index]);
+            try {
+                failed |= !run(path, out);
+            } catch (IOException | IllegalArgumentException | RunException ex) {
+                System.err.printf("%s: %s%n", path, ex);
+                failed = true;
+            }
+        }
+        return failed ? 1 : 0;
+    }
+    
+    private boolean run(Path path, Writer out) throws IOException, RunException {
+        var text = Files.readString(path).trim();
+        MappedTape tape = null;
+        Profile profile = null;
+        try (var writer = record == null ? null : new TraceFile.Writer(record.resolve(path.getFileName() + ".trace"));
+             var tracer = Trace.of(trace, writer != null ? writer : Trace.printer(program, System.err))) {
+            if (mapped != null) {
+                tape = MappedTape.temporary(table.alphabet(), mapped);
+                tape.load(text);
+            }
+            Engine engine;
+            if (table.tapes() > 1) {
+                engine = new MultiMachine(table);
+                engine.load(text);
+            } else if (block != 0) {
+                engine = new BlockMachine(table, block, cache);
+                engine.load(text);
+            } else if (code != null) {
+                var machine = new CompiledMachine(table, code);
+                if (tape != null) {
+                    machine.load(tape);
+                } else {
+                    machine.load(text);
+                }
+                engine = machine;
+            } else {
+                var machine = new Machine(table);
+                if (tape != null) {
+                    machine.load(tape);
+                } else {
+                    machine.load(text);
+                }
+                machine.trace(tracer);
+                if (decide) {
+                    // bouncers are a heuristic, they may stop a run that would halt
+                    machine.decider(bouncers ? Deciders.standard() : Deciders.proven());
+                }
+                if (metrics != null) {
+                    profile = new Profile(table);
+                    machine.profile(profile);
+                }
+                engine = machine;
+            }
+            
+            var result = engine.run(maxSteps);
+            if (tracer != null) {
+                tracer.flush();
+            }
+            result.tape.print(out);
+            out.write(System.lineSeparator());
+            out.flush();
+            System.err.printf("%s: %s%n", path, result);
+            if (profile != null) {
+                Files.writeString(metrics.resolve(path.getFileName() + ".json"), profile.json());
+                Files.writeString(metrics.resolve(path.getFileName() + ".prom"), profile.prometheus());
+            }
+            if (engine instanceof BlockMachine) {
+                var machine = (BlockMachine) engine;
+                System.err.printf("%s: block %d, cache hits %d, misses %d, evictions %d%n", 
+                    path, machine.blockSize(), machine.hits(), machine.misses(), machine.evictions());
+            }
+            return result.reason == Result.Reason.HALTED;
+        } finally {
+            if (tape != null) {
+                tape.close();
+            }
+        }
+    }
+}
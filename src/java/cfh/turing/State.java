@@ -1,89 +1,58 @@
 package cfh.turing;
 
-import static java.util.Objects.*;
-import static java.util.stream.Collectors.*;
-
-import java.nio.CharBuffer;
-import java.text.ParseException;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.NoSuchElementException;
 
 public class State implements Positionable {
     
-    static State parse(CharBuffer text) throws ParseException {
-        int start = text.position();
-        if (!text.hasRemaining() || text.get() != '(') 
-            throw new ParseException("reading state, missing '('", start);
-        
-        var position = new Position(start);
-        var state = new State(position);
-        while (text.hasRemaining()) {
-            text.mark();
-            var ch = text.get();
-            switch (ch) {
-                case ' ':
-                case '\r':
-                case '\n':
-                    break;
-                case ';':
-                    while (text.hasRemaining() && text.get() != '\n') {
-                        text.mark();
-                    }
-                    text.reset();
-                    break;
-                case '(':
-                    text.reset();
-                    var alternative = Alternative.parse(text);
-                    try {
-                        state.add(alternative);
-                    } catch (IllegalArgumentException ex) {
-                        throw (ParseException) new ParseException(String.format("reading state, %s", 
-                            ex.getMessage()), text.position()-1)
-                        .initCause(ex);
-                    }
-                    break;
-                case ')':
-                    position.end(text.position());
-                    return state;
-                default:
-                    throw new ParseException(String.format("reading state, unrecognized character '%s' (0x%2x)", ch, (int)ch), text.position()-1);
-            }
-        }
-        throw new ParseException("unexpected end of text reading state", text.position()-1);
-    }
-
     final Position position;
     
-    private final List<Alternative> alternatives = new ArrayList<>();
+    private final Program program;
+    private final int first;
+    private final int count;
     
-    private State(Position position) {
-        this.position = requireNonNull(position);
+    /** A view of the state {@code index} of {@code program}. */
+    State(Program program, int index) {
+        this.program = program;
+        first = program.first(index);
+        count = program.first(index + 1) - first;
+        position = new Position(program.stateStart(index));
+        position.end(program.stateEnd(index));
     }
     
-    private void add(Alternative alternative) {
-        if (alternatives.stream().anyMatch(a -> a.expected == alternative.expected))
-            throw new IllegalArgumentException(String.format("duplicate alternative for '%s' (0x%2x)", 
-                alternative.expected, (int)alternative.expected));
-        alternatives.add(alternative);
+    public Alternative alternativeFor(char symbol) throws NoSuchElementException {
+        if (program.tapes() != 1)
+            throw new IllegalArgumentException("program for " + program.tapes() + " tapes");
+        for (var i = 0; i < count; i++) {
+            if (program.expected(first + i) == symbol)
+                return new Alternative(program, first + i);
+        }
+        throw new NoSuchElementException("No value present");
     }
     
-    public Alternative alternativeFor(char symbol) throws NoSuchElementException {
-        return alternatives
-            .stream()
-            .filter(a -> a.expected == symbol)
-            .findFirst()
-            .get();
+    /** The alternative for the symbols read on each tape, blanks as {@code ' '}. */
+    public Alternative alternativeFor(CharSequence symbols) throws NoSuchElementException {
+        var tapes = program.tapes();
+        if (symbols.length() != tapes)
+            throw new IllegalArgumentException(symbols.length() + " symbols for " + tapes + " tapes");
+        next:
+        for (var i = 0; i < count; i++) {
+            for (var t = 0; t < tapes; t++) {
+                if (program.expected(first + i, t) != symbols.charAt(t))
+                    continue next;
+            }
+            return new Alternative(program, first + i);
+        }
+        throw new NoSuchElementException("No value present");
     }
     
     public int alternativesCount() {
-        return alternatives.size();
+        return count;
     }
     
     public Alternative alternative(int index) {
-        if (index < 0 || index >= alternatives.size())
+        if (index < 0 || index >= count)
             throw new NoSuchElementException("invalid alternative index: " + index);
-        return alternatives.get(index);
+        return new Alternative(program, first + index);
     }
     
     @Override
@@ -93,9 +62,10 @@ public class State implements Positionable {
     
     @Override
     public String toString() {
-        return  alternatives
-                .stream()
-                .map(Alternative::toString)
-                .collect(joining("\n  ", "(\n  ", "\n )"));
+        var text = new StringBuilder("(");
+        for (var i = 0; i < count; i++) {
+            text.append("\n  ").append(new Alternative(program, first + i));
+        }
+        return text.append("\n )").toString();
     }
 }
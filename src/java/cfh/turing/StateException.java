@@ -0,0 +1,19 @@
+package cfh.turing;
+
+import static java.util.Objects.*;
+
+@SuppressWarnings("serial")
+public class StateException extends RunException {
+    
+    public final State state;
+    
+    StateException(State state, String format, Object... args) {
+        super(format, args);
+        this.state = requireNonNull(state); 
+    }
+    
+    @Override
+    Position position() {
+        return state.position;
+    }
+}
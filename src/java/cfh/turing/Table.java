@@ -0,0 +1,207 @@
+package cfh.turing;
+
+import static java.util.Objects.*;
+
+public class Table {
+    
+    static final byte LEFT = 0;
+    static final byte RIGHT = 1;
+    static final byte NOP = 2;
+    static final byte HALT = 3;
+    static final byte MISSING = 4;
+    static final byte SWEEP_LEFT = 5;
+    static final byte SWEEP_RIGHT = 6;
+    
+    static final int INVALID = -1;
+    
+    public static Table compile(Program program) {
+        return new Table(program, program.alphabet());
+    }
+    
+    final Program program;
+    final Alphabet alphabet;
+    final int states;
+    final int symbols;
+    final int tapes;
+    /**
+     * Entries per state, one for each combination of the symbols read: {@code symbols} to the power
+     * of {@code tapes}. The entry for several tapes packs the symbols, the first tape's highest.
+     */
+    final int width;
+    
+    // replace and move have an element per tape: index * tapes + tape
+    final byte[] replace;
+    // for several tapes only HALT, MISSING or NOP, the moves are in move
+    final byte[] command;
+    final byte[] move;
+    final int[] next;
+    final int[] alternative;
+    final long[] sweep;
+    
+    private Table(Program program, Alphabet alphabet) {
+        this.program = requireNonNull(program);
+        this.alphabet = requireNonNull(alphabet);
+        states = program.stateCount();
+        symbols = alphabet.size();
+        tapes = program.tapes();
+        var width = 1;
+        for (var t = 0; t < tapes; t++) {
+            width = Math.multiplyExact(width, symbols);
+        }
+        this.width = width;
+        
+        var size = Math.multiplyExact(states, width);
+        replace = new byte[Math.multiplyExact(size, tapes)];
+        command = new byte[size];
+        move = tapes == 1 ? null : new byte[size * tapes];
+        next = new int[size];
+        alternative = new int[size];
+        sweep = new long[states];
+        for (var index = 0; index < size; index++) {
+            command[index] = MISSING;
+            next[index] = INVALID;
+            alternative[index] = -1;
+        }
+        
+        for (var s = 0; s < states; s++) {
+            if (tapes > 1) {
+                compileTapes(s);
+                continue;
+            }
+            var first = program.first(s);
+            for (var a = first; a < program.first(s+1); a++) {
+                var index = s * symbols + alphabet.code(program.expected(a));
+                var cmd = program.command(a);
+                replace[index] = (byte) alphabet.code(program.replace(a));
+                command[index] = code(cmd);
+                alternative[index] = a - first;
+                if (cmd != Command.HALT) {
+                    var target = (long) s + program.jump(a);
+                    if (0 <= target && target < states) {
+                        next[index] = (int) target;
+                    }
+                }
+            }
+            markSweeps(s);
+        }
+    }
+    
+    private void compileTapes(int state) {
+        var first = program.first(state);
+        for (var a = first; a < program.first(state+1); a++) {
+            var entry = 0;
+            for (var t = 0; t < tapes; t++) {
+                entry = entry * symbols + alphabet.code(program.expected(a, t));
+            }
+            var index = state * width + entry;
+            var halt = false;
+            for (var t = 0; t < tapes; t++) {
+                var cmd = program.command(a, t);
+                replace[index * tapes + t] = (byte) alphabet.code(program.replace(a, t));
+                move[index * tapes + t] = code(cmd);
+                halt |= cmd == Command.HALT;
+            }
+            command[index] = halt ? HALT : NOP;
+            alternative[index] = a - first;
+            if (!halt) {
+                var target = (long) state + program.jump(a);
+                if (0 <= target && target < states) {
+                    next[index] = (int) target;
+                }
+            }
+        }
+    }
+    
+    private void markSweeps(int state) {
+        var direction = MISSING;
+        var mask = 0L;
+        for (var symbol = 0; symbol < symbols; symbol++) {
+            var index = state * symbols + symbol;
+            var cmd = command[index];
+            if ((cmd == LEFT || cmd == RIGHT) && next[index] == state && replace[index] == symbol) {
+                if (direction != MISSING && direction != cmd)
+                    return;
+                if (symbol >= Long.SIZE)
+                    return;
+                direction = cmd;
+                mask |= 1L << symbol;
+            }
+        }
+        if (mask == 0)
+            return;
+        sweep[state] = mask;
+        for (var symbol = 0; symbol < symbols; symbol++) {
+            if ((mask >>> symbol & 1) != 0) {
+                command[state * symbols + symbol] = direction == LEFT ? SWEEP_LEFT : SWEEP_RIGHT;
+            }
+        }
+    }
+    
+    private static byte code(Command command) {
+        switch (command) {
+            case LEFT: return LEFT;
+            case RIGHT: return RIGHT;
+            case NOP: return NOP;
+            case HALT: return HALT;
+            default: throw new IllegalArgumentException("unhandled command \"" + command + "\"");
+        }
+    }
+    
+    public Program program() {
+        return program;
+    }
+    
+    public Alphabet alphabet() {
+        return alphabet;
+    }
+    
+    public int stateCount() {
+        return states;
+    }
+    
+    public int tapes() {
+        return tapes;
+    }
+    
+    /** For the engines that run a single tape only. */
+    void requireSingleTape() throws IllegalArgumentException {
+        if (tapes != 1)
+            throw new IllegalArgumentException("program for " + tapes + " tapes, only multi-tape engines can run it");
+    }
+    
+    /** For the engines that run several tapes only, their tables have the moves per tape. */
+    void requireMultiTape() throws IllegalArgumentException {
+        if (tapes == 1)
+            throw new IllegalArgumentException("program for 1 tape, only single-tape engines can run it");
+    }
+    
+    /** The alternative of the entry for {@code symbol}, the packed symbols for several tapes. */
+    Alternative alternative(int state, int symbol) {
+        var index = alternative[state * width + symbol];
+        return index == -1 ? null : program.state(state).alternative(index);
+    }
+    
+    /** The symbols of an entry for several tapes, like {@code [0 B]}. */
+    String symbols(int entry) {
+        var text = new char[tapes * 2 + 1];
+        text[0] = '[';
+        for (var t = tapes - 1; t >= 0; t--) {
+            var symbol = alphabet.symbol(entry % symbols);
+            text[t * 2 + 1] = symbol == Alphabet.BLANK ? 'B' : symbol;
+            text[t * 2 + 2] = t == tapes - 1 ? ']' : ' ';
+            entry /= symbols;
+        }
+        return new String(text);
+    }
+    
+    StateException missing(int state, char symbol, long position) {
+        return new StateException(program.state(state), 
+            "no alternatives for '%s', position %d, state %d", symbol, position, state);
+    }
+    
+    AlternativeException invalid(int state, int symbol, long position) {
+        var alt = alternative(state, symbol);
+        return new AlternativeException(alt, 
+            "no state at index '%d', position %d, from state %d", (long) state + alt.jump(), position, state);
+    }
+}
@@ -0,0 +1,104 @@
+package cfh.turing;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+public interface Tape {
+
+    public Alphabet alphabet();
+    
+    public long head();
+    
+    public void head(long position);
+    
+    public int read();
+    
+    public void write(int symbol);
+    
+    public void left();
+    
+    public void right();
+    
+    /** Moves the head right while the symbol under it is in {@code mask}, at most {@code max} cells. */
+    public default long scanRight(long mask, long max) {
+        var moved = 0L;
+        while (moved < max && (mask >>> read() & 1) != 0) {
+            right();
+            moved += 1;
+        }
+        return moved;
+    }
+    
+    /** Moves the head left while the symbol under it is in {@code mask}, at most {@code max} cells. */
+    public default long scanLeft(long mask, long max) {
+        var moved = 0L;
+        while (moved < max && (mask >>> read() & 1) != 0) {
+            left();
+            moved += 1;
+        }
+        return moved;
+    }
+    
+    public int get(long position);
+    
+    public void set(long position, int symbol);
+    
+    /** Lowest position loaded, written or visited by the head. */
+    public long start();
+    
+    /** One past the highest position loaded, written or visited by the head. */
+    public long end();
+    
+    public default String text() {
+        var length = end() - start();
+        if (length > Integer.MAX_VALUE - 8)
+            throw new IllegalStateException("tape too long for text: " + length);
+        var builder = new StringBuilder((int) length);
+        try {
+            print(builder);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return builder.toString();
+    }
+    
+    /** The cells from {@link #start()} to {@link #end()} as symbols, read from the tape on access, not copied. */
+    public default CharSequence chars() {
+        var start = start();
+        var length = end() - start;
+        if (length > Integer.MAX_VALUE)
+            throw new IllegalStateException("tape too long for chars: " + length);
+        var alphabet = alphabet();
+        return new CharSequence() {
+            @Override
+            public int length() {
+                return (int) length;
+            }
+            @Override
+            public char charAt(int index) {
+                if (index < 0 || index >= length)
+                    throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+                return alphabet.symbol(get(start + index));
+            }
+            @Override
+            public CharSequence subSequence(int from, int to) {
+                var builder = new StringBuilder(to - from);
+                for (var i = from; i < to; i++) {
+                    builder.append(charAt(i));
+                }
+                return builder;
+            }
+            @Override
+            public String toString() {
+                return subSequence(0, (int) length).toString();
+            }
+        };
+    }
+    
+    public default void print(Appendable out) throws IOException {
+        var alphabet = alphabet();
+        for (var position = start(); position < end(); position++) {
+            out.append(alphabet.symbol(get(position)));
+        }
+    }
+}
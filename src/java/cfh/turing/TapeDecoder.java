@@ -0,0 +1,210 @@
+package cfh.turing;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Decodes tape text for the output line: {@code '*'} is kept, runs of blanks become one blank,
+ * runs of {@code 0} and {@code 1} are written as decimal numbers, anything else is dropped.
+ *
+ * The runs are remembered, so after an edit only the runs around it are decoded again. Numbers
+ * with more than {@link #MAX_BITS} bits are not converted, they are written as their decimal
+ * digit count instead, like {@code [1234 digits]}.
+ */
+final class TapeDecoder {
+    
+    static final int MAX_BITS = 1 << 13;
+    
+    private static final double DIGITS_PER_BIT = Math.log10(2);
+    
+    // runs sorted by position, start and end in the current text
+    private int count = 0;
+    private int[] start = new int[64];
+    private int[] end = new int[64];
+    private String[] decoded = new String[64];
+    private long length = 0;
+    private int textLength = 0;
+    
+    /** Decodes the whole text. */
+    String decode(CharSequence text, int limit) {
+        count = 0;
+        length = 0;
+        textLength = text.length();
+        insert(0, scan(text, 0, text.length()));
+        return output(limit);
+    }
+    
+    /**
+     * Decodes the text after the text between {@code from} and {@code oldTo} of the previously
+     * decoded text was replaced by the text up to {@code newTo}.
+     * @param limit maximum length of the returned output, longer output ends with its length
+     */
+    String update(CharSequence text, int from, int oldTo, int newTo, int limit) {
+        var delta = newTo - oldTo;
+        if (textLength + delta != text.length())
+            throw new IllegalArgumentException("text length " + text.length() + ", expected " + (textLength + delta));
+        textLength = text.length();
+        
+        // runs touching the edit, plus one more on each side since the runs next to them may merge or split
+        var first = search(from);
+        var last = first;
+        while (last < count && start[last] <= oldTo) {
+            last += 1;
+        }
+        if (first > 0) {
+            first -= 1;
+        }
+        if (last < count) {
+            last += 1;
+        }
+        var regionStart = first == 0 ? 0 : start[first];
+        var regionEnd = last == count ? textLength - delta : end[last-1];
+        
+        for (var i = first; i < last; i++) {
+            length -= decoded[i].length();
+        }
+        for (var i = last; i < count; i++) {
+            start[i] += delta;
+            end[i] += delta;
+        }
+        var runs = scan(text, regionStart, regionEnd + delta);
+        remove(first, last);
+        insert(first, runs);
+        return output(limit);
+    }
+    
+    /** Index of the first run ending at or after {@code position}. */
+    private int search(int position) {
+        var low = 0;
+        for (var high = count; low < high; ) {
+            var mid = (low + high) >>> 1;
+            if (end[mid] < position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    private Runs scan(CharSequence text, int from, int to) {
+        var runs = new Runs();
+        for (var i = from; i < to; i++) {
+            var ch = text.charAt(i);
+            switch (ch) {
+                case '*':
+                    runs.add(i, i+1, "*");
+                    break;
+                case ' ': {
+                    var j = i + 1;
+                    while (j < to && text.charAt(j) == ' ') {
+                        j += 1;
+                    }
+                    runs.add(i, j, " ");
+                    i = j - 1;
+                    break;
+                }
+                case '0':
+                case '1': {
+                    var j = i + 1;
+                    while (j < to && (text.charAt(j) == '0' || text.charAt(j) == '1')) {
+                        j += 1;
+                    }
+                    runs.add(i, j, number(text, i, j));
+                    i = j - 1;
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+        return runs;
+    }
+    
+    private static String number(CharSequence text, int from, int to) {
+        while (from < to - 1 && text.charAt(from) == '0') {
+            from += 1;
+        }
+        var bits = to - from;
+        if (bits < 63) {
+            var value = 0L;
+            for (var i = from; i < to; i++) {
+                value = value << 1 | (text.charAt(i) - '0');
+            }
+            return Long.toString(value);
+        }
+        if (bits <= MAX_BITS)
+            return new BigInteger(text.subSequence(from, to).toString(), 2).toString();
+        // 2^(bits-1) <= value < 2^bits, the digit count is exact unless a power of ten lies in between
+        var digits = (long) Math.floor((bits - 1) * DIGITS_PER_BIT) + 1;
+        var upper = (long) Math.floor(bits * DIGITS_PER_BIT) + 1;
+        return digits == upper ? "[" + digits + " digits]" : "[" + digits + "-" + upper + " digits]";
+    }
+    
+    private void remove(int from, int to) {
+        System.arraycopy(start, to, start, from, count - to);
+        System.arraycopy(end, to, end, from, count - to);
+        System.arraycopy(decoded, to, decoded, from, count - to);
+        count -= to - from;
+        Arrays.fill(decoded, count, count + to - from, null);
+    }
+    
+    private void insert(int index, Runs runs) {
+        var size = count + runs.count;
+        if (size > start.length) {
+            var capacity = Math.max(size, start.length * 2);
+            start = Arrays.copyOf(start, capacity);
+            end = Arrays.copyOf(end, capacity);
+            decoded = Arrays.copyOf(decoded, capacity);
+        }
+        System.arraycopy(start, index, start, index + runs.count, count - index);
+        System.arraycopy(end, index, end, index + runs.count, count - index);
+        System.arraycopy(decoded, index, decoded, index + runs.count, count - index);
+        System.arraycopy(runs.start, 0, start, index, runs.count);
+        System.arraycopy(runs.end, 0, end, index, runs.count);
+        System.arraycopy(runs.decoded, 0, decoded, index, runs.count);
+        count = size;
+        for (var i = 0; i < runs.count; i++) {
+            length += runs.decoded[i].length();
+        }
+    }
+    
+    private String output(int limit) {
+        if (length <= limit) {
+            var text = new StringBuilder((int) length);
+            for (var i = 0; i < count; i++) {
+                text.append(decoded[i]);
+            }
+            return text.toString();
+        }
+        var suffix = String.format(" ... (%d chars)", length);
+        var text = new StringBuilder(limit);
+        for (var i = 0; i < count && text.length() < limit; i++) {
+            text.append(decoded[i]);
+        }
+        text.setLength(Math.max(0, limit - suffix.length()));
+        return text.append(suffix).toString();
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    private static final class Runs {
+        
+        int count = 0;
+        int[] start = new int[16];
+        int[] end = new int[16];
+        String[] decoded = new String[16];
+        
+        void add(int from, int to, String text) {
+            if (count == start.length) {
+                start = Arrays.copyOf(start, count * 2);
+                end = Arrays.copyOf(end, count * 2);
+                decoded = Arrays.copyOf(decoded, count * 2);
+            }
+            start[count] = from;
+            end[count] = to;
+            decoded[count] = text;
+            count += 1;
+        }
+    }
+}
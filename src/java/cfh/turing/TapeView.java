@@ -0,0 +1,284 @@
+package cfh.turing;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+import javax.swing.JScrollBar;
+
+/**
+ * Shows a tape without copying it: only the rows in view are read from the {@link Tape} when painted.
+ * Each row starts with the position of its first cell, the head cell is highlighted. The strip on
+ * the right is an overview of the whole tape, darker where there are more non-blank cells, with the
+ * head in red and the rows in view framed; clicking it scrolls there.
+ *
+ * The tape must not change while shown.
+ */
+@SuppressWarnings("serial")
+public class TapeView extends JPanel {
+    
+    private static final Font FONT = new Font("monospaced", Font.PLAIN, 12);
+    private static final Color HEAD = new Color(255, 200, 0);
+    private static final Color GUTTER = Color.GRAY;
+    private static final Color BLANK = Color.GRAY;
+    private static final int OVERVIEW_WIDTH = 24;
+    private static final int SAMPLES = 64;
+    // scroll bar values are ints, larger row counts are scaled down
+    private static final long SCROLL_MAX = 1 << 30;
+    
+    private Tape tape = null;
+    private long start;
+    private long end;
+    private long head;
+    
+    private int columns = 1;
+    private long rows = 0;
+    private long firstRow = 0;
+    private long scale = 1;
+    
+    private final Cells cells = new Cells();
+    private final Overview overview = new Overview();
+    private final JScrollBar scrollBar = new JScrollBar(JScrollBar.VERTICAL);
+    
+    public TapeView() {
+        super(new BorderLayout());
+        scrollBar.addAdjustmentListener(e -> {
+            var row = Math.min(e.getValue() * scale, Math.max(0, rows - 1));
+            if (row != firstRow) {
+                firstRow = row;
+                repaint();
+            }
+        });
+        var right = new JPanel(new BorderLayout());
+        right.add(scrollBar, BorderLayout.LINE_START);
+        right.add(overview, BorderLayout.LINE_END);
+        add(cells, BorderLayout.CENTER);
+        add(right, BorderLayout.LINE_END);
+        cells.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                layoutRows(true);
+            }
+        });
+        cells.addMouseWheelListener(this::wheel);
+    }
+    
+    /** Shows {@code tape}, scrolled to the head, or nothing if {@code null}. */
+    public void tape(Tape tape) {
+        this.tape = tape;
+        if (tape != null) {
+            start = tape.start();
+            end = Math.max(tape.end(), start + 1);
+            head = tape.head();
+        }
+        overview.image = null;
+        layoutRows(false);
+        scrollTo(head);
+    }
+    
+    public Tape tape() {
+        return tape;
+    }
+    
+    /** Scrolls to the row of {@code position}, placing it a third from the top. */
+    public void scrollTo(long position) {
+        if (tape == null)
+            return;
+        var row = (Math.max(start, Math.min(end - 1, position)) - start) / columns;
+        scrollToRow(row - visibleRows() / 3);
+    }
+    
+    private void scrollToRow(long row) {
+        firstRow = Math.max(0, Math.min(rows - 1, row));
+        scrollBar.setValue((int) (firstRow / scale));
+        repaint();
+    }
+    
+    private void wheel(MouseWheelEvent e) {
+        scrollToRow(firstRow + e.getWheelRotation() * 3L);
+    }
+    
+    private int symbol(long position) {
+        return tape.start() <= position && position < tape.end() ? tape.get(position) : 0;
+    }
+    
+    private int visibleRows() {
+        return Math.max(1, cells.getHeight() / cells.lineHeight());
+    }
+    
+    /** Recomputes the rows for the current width, keeping the top cell in view if {@code keep}. */
+    private void layoutRows(boolean keep) {
+        var top = start + firstRow * columns;
+        var metrics = cells.getFontMetrics(FONT);
+        var width = cells.getWidth() - cells.gutter() * metrics.charWidth('0');
+        columns = Math.max(1, width / metrics.charWidth('0'));
+        rows = tape == null ? 0 : (end - start + columns - 1) / columns;
+        scale = Math.max(1, (rows + SCROLL_MAX - 1) / SCROLL_MAX);
+        var visible = visibleRows();
+        scrollBar.setValues(0, (int) Math.max(1, visible / scale), 0, (int) Math.max(1, (rows + visible - 1) / scale));
+        scrollBar.setBlockIncrement((int) Math.max(1, visible / scale));
+        if (keep && tape != null) {
+            scrollToRow((top - start) / columns);
+        } else {
+            firstRow = 0;
+            repaint();
+        }
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    private final class Cells extends JComponent {
+        
+        private char[] line = new char[0];
+        // blanks are drawn as dim dots
+        private char[] blanks = new char[0];
+        
+        Cells() {
+            setFont(FONT);
+            setPreferredSize(new Dimension(400, 200));
+            setOpaque(true);
+            setBackground(Color.WHITE);
+        }
+        
+        int lineHeight() {
+            return getFontMetrics(FONT).getHeight();
+        }
+        
+        /** Width of the position column in characters, with a separating blank. */
+        int gutter() {
+            return tape == null ? 0 : Math.max(Long.toString(start).length(), Long.toString(end).length()) + 1;
+        }
+        
+        @Override
+        protected void paintComponent(Graphics g) {
+            g.setColor(getBackground());
+            g.fillRect(0, 0, getWidth(), getHeight());
+            if (tape == null)
+                return;
+            g.setFont(FONT);
+            var metrics = g.getFontMetrics();
+            var charWidth = metrics.charWidth('0');
+            var lineHeight = metrics.getHeight();
+            var gutter = gutter();
+            var x0 = gutter * charWidth;
+            if (line.length < columns) {
+                line = new char[columns];
+                blanks = new char[columns];
+            }
+            var alphabet = tape.alphabet();
+            for (var r = 0; r * lineHeight < getHeight() && firstRow + r < rows; r++) {
+                var from = start + (firstRow + r) * columns;
+                var to = Math.min(end, from + columns);
+                var y = r * lineHeight;
+                var baseline = y + metrics.getAscent();
+                g.setColor(GUTTER);
+                g.drawString(Long.toString(from), 0, baseline);
+                if (from <= head && head < to) {
+                    g.setColor(HEAD);
+                    g.fillRect(x0 + (int) (head - from) * charWidth, y, charWidth, lineHeight);
+                }
+                var count = (int) (to - from);
+                for (var i = 0; i < count; i++) {
+                    var symbol = symbol(from + i);
+                    line[i] = alphabet.symbol(symbol);
+                    blanks[i] = symbol == 0 ? '.' : ' ';
+                }
+                g.setColor(BLANK);
+                g.drawChars(blanks, 0, count, x0, baseline);
+                g.setColor(Color.BLACK);
+                g.drawChars(line, 0, count, x0, baseline);
+            }
+        }
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    private final class Overview extends JComponent {
+        
+        // density per pixel row, computed when first painted for a tape and height
+        private int[] image = null;
+        
+        Overview() {
+            setPreferredSize(new Dimension(OVERVIEW_WIDTH, 100));
+            setToolTipText("overview of the whole tape, click to scroll");
+            var mouse = new MouseAdapter() {
+                @Override
+                public void mousePressed(MouseEvent e) {
+                    scroll(e.getY());
+                }
+                @Override
+                public void mouseDragged(MouseEvent e) {
+                    scroll(e.getY());
+                }
+            };
+            addMouseListener(mouse);
+            addMouseMotionListener(mouse);
+        }
+        
+        private void scroll(int y) {
+            if (tape != null && getHeight() > 0) {
+                scrollTo(position(y));
+            }
+        }
+        
+        private long position(int y) {
+            return start + (long) ((end - start) * (double) y / getHeight());
+        }
+        
+        private int y(long position) {
+            return (int) ((position - start) * (double) getHeight() / (end - start));
+        }
+        
+        @Override
+        protected void paintComponent(Graphics g) {
+            var height = getHeight();
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, getWidth(), height);
+            if (tape == null || height == 0)
+                return;
+            if (image == null || image.length != height) {
+                image = density(height);
+            }
+            for (var y = 0; y < height; y++) {
+                var gray = 255 - image[y] * 255 / SAMPLES;
+                g.setColor(new Color(gray, gray, gray));
+                g.drawLine(0, y, getWidth(), y);
+            }
+            g.setColor(Color.BLUE);
+            var top = y(start + firstRow * columns);
+            var bottom = y(start + (firstRow + visibleRows()) * columns);
+            g.drawRect(0, top, getWidth() - 1, Math.max(1, bottom - top));
+            g.setColor(Color.RED);
+            var y = y(head);
+            g.fillRect(0, y, getWidth(), 2);
+        }
+        
+        /** Non-blank cells among up to {@link #SAMPLES} evenly spread cells for each pixel row. */
+        private int[] density(int height) {
+            var density = new int[height];
+            for (var y = 0; y < height; y++) {
+                var from = position(y);
+                var to = Math.max(from + 1, position(y + 1));
+                var step = Math.max(1, (to - from) / SAMPLES);
+                var count = 0;
+                var samples = 0;
+                for (var position = from; position < to && samples < SAMPLES; position += step) {
+                    if (symbol(position) != 0) {
+                        count += 1;
+                    }
+                    samples += 1;
+                }
+                density[y] = count * SAMPLES / samples;
+            }
+            return density;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package cfh.turing;
+
+import static java.util.Objects.*;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Step trace written by the engine into a preallocated ring buffer and drained in batches 
+ * by a background thread. Each record is {@link #SIZE} longs: step, state, alternative and head position.
+ */
+public class Trace implements AutoCloseable {
+    
+    public static final int STEP = 0;
+    public static final int STATE = 1;
+    public static final int ALTERNATIVE = 2;
+    public static final int POSITION = 3;
+    public static final int SIZE = 4;
+    
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    
+    public interface Sink {
+        /** Called on the trace thread with {@code count} records starting at {@code offset} (in longs). */
+        public void accept(long[] records, int offset, int count);
+        
+        public default void flush() {
+        }
+    }
+    
+    public static Trace full(Sink sink) {
+        return new Trace(sink, 1, DEFAULT_CAPACITY);
+    }
+    
+    public static Trace sampled(Sink sink, long interval) {
+        return new Trace(sink, interval, DEFAULT_CAPACITY);
+    }
+    
+    /** Returns the interval for a level: 0 for {@code "off"}, 1 for {@code "full"}, otherwise the given number of steps. */
+    public static long interval(String level) throws NumberFormatException {
+        switch (level) {
+            case "off": return 0;
+            case "full": return 1;
+            default:
+                var interval = Long.parseLong(level);
+                if (interval < 1)
+                    throw new NumberFormatException("invalid trace interval: " + interval);
+                return interval;
+        }
+    }
+    
+    /** Returns {@code null} if the level is {@code "off"}, otherwise a trace with the level's interval. */
+    public static Trace of(String level, Sink sink) throws NumberFormatException {
+        var interval = interval(level);
+        return interval == 0 ? null : new Trace(sink, interval, DEFAULT_CAPACITY);
+    }
+    
+    /** Prints each record as step, head position and the alternative executed. */
+    public static Sink printer(Program program, PrintStream out) {
+        requireNonNull(program);
+        requireNonNull(out);
+        return (records, offset, count) -> {
+            var builder = new StringBuilder(count * 32);
+            for (var i = offset; i < offset + count * SIZE; i += SIZE) {
+                var alternative = program.state((int) records[i+STATE]).alternative((int) records[i+ALTERNATIVE]);
+                builder.append(String.format("%8d %5d: %s%n", records[i+STEP], records[i+POSITION], alternative));
+            }
+            out.print(builder);
+        };
+    }
+    
+    private final Sink sink;
+    private final long interval;
+    private final int capacity;
+    private final long[] buffer;
+    private final Thread consumer;
+    
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong read = new AtomicLong();
+    private volatile boolean closed = false;
+    private long cached;
+    
+    public Trace(Sink sink, long interval, int capacity) {
+        this.sink = requireNonNull(sink);
+        if (interval < 1)
+            throw new IllegalArgumentException("invalid interval: " + interval);
+        if (capacity < 1 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        this.interval = interval;
+        this.capacity = capacity;
+        buffer = new long[capacity * SIZE];
+        consumer = new Thread(this::drain, "trace");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+    
+    public long interval() {
+        return interval;
+    }
+    
+    /** Returns the first step number after {@code step} that is to be recorded. */
+    long next(long step) {
+        return (step / interval + 1) * interval;
+    }
+    
+    void record(long step, int state, int alternative, long position) {
+        var w = written.get();
+        if (w - cached >= capacity) {
+            cached = read.get();
+            while (w - cached >= capacity) {
+                LockSupport.unpark(consumer);
+                LockSupport.parkNanos(10_000);
+                cached = read.get();
+            }
+        }
+        var offset = (int) (w & (capacity-1)) * SIZE;
+        buffer[offset + STEP] = step;
+        buffer[offset + STATE] = state;
+        buffer[offset + ALTERNATIVE] = alternative;
+        buffer[offset + POSITION] = position;
+        written.lazySet(w + 1);
+    }
+    
+    /** Waits until all records written so far have been passed to the sink. */
+    public void flush() {
+        var w = written.get();
+        while (read.get() < w && consumer.isAlive()) {
+            LockSupport.unpark(consumer);
+            LockSupport.parkNanos(100_000);
+        }
+    }
+    
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void drain() {
+        var r = read.get();
+        while (true) {
+            var w = written.get();
+            if (r == w) {
+                if (closed && r == written.get())
+                    break;
+                sink.flush();
+                LockSupport.parkNanos(1_000_000);
+                continue;
+            }
+            var from = (int) (r & (capacity-1));
+            var count = (int) Math.min(w - r, capacity - from);
+            try {
+                sink.accept(buffer, from * SIZE, count);
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
+            r += count;
+            read.lazySet(r);
+        }
+        sink.flush();
+    }
+}
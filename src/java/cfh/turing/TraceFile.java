@@ -0,0 +1,233 @@
+package cfh.turing;
+
+import static java.nio.file.StandardOpenOption.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Binary trace file: a header followed by fixed-width records (step, state, alternative, position),
+ * with a sidecar index holding (step, record number) for every {@link #INDEX_INTERVAL}th record.
+ */
+public class TraceFile {
+    
+    public static final int MAGIC = 0x54545243;     // "TTRC"
+    public static final int VERSION = 1;
+    public static final int HEADER = 16;
+    public static final int RECORD = 24;
+    public static final int INDEX_ENTRY = 16;
+    public static final int INDEX_INTERVAL = 4096;
+    
+    private static final int BUFFER = 1 << 16;
+    
+    public static Path index(Path file) {
+        return file.resolveSibling(file.getFileName() + ".idx");
+    }
+    
+    public static void main(String[] args) {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("usage: TraceFile <file> <step> [<count>]");
+            System.exit(2);
+        }
+        try (var reader = new Reader(Paths.get(args[0]))) {
+            var step = Long.parseLong(args[1]);
+            var count = args.length > 2 ? Long.parseLong(args[2]) : 20;
+            var record = new long[Trace.SIZE];
+            var end = Math.min(reader.count(), reader.seek(step) + count);
+            for (var i = reader.seek(step); i < end; i++) {
+                reader.read(i, record);
+                System.out.printf("%8d %5d: state %d, alternative %d%n", 
+                    record[Trace.STEP], record[Trace.POSITION], record[Trace.STATE], record[Trace.ALTERNATIVE]);
+            }
+        } catch (IOException | IllegalArgumentException ex) {
+            System.err.println(ex);
+            System.exit(1);
+        }
+    }
+    
+    private TraceFile() {
+        throw new AssertionError();
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    public static class Writer implements Trace.Sink, Closeable {
+        
+        private final FileChannel data;
+        private final FileChannel index;
+        private final ByteBuffer dataBuffer = ByteBuffer.allocateDirect(BUFFER / RECORD * RECORD);
+        private final ByteBuffer indexBuffer = ByteBuffer.allocateDirect(BUFFER / INDEX_ENTRY * INDEX_ENTRY);
+        private long count = 0;
+        
+        public Writer(Path file) throws IOException {
+            data = FileChannel.open(file, WRITE, CREATE, TRUNCATE_EXISTING);
+            index = FileChannel.open(index(file), WRITE, CREATE, TRUNCATE_EXISTING);
+            dataBuffer.putInt(MAGIC).putInt(VERSION).putLong(0);
+        }
+        
+        public long count() {
+            return count;
+        }
+        
+        @Override
+        public void accept(long[] records, int offset, int count) {
+            try {
+                for (var i = offset; i < offset + count * Trace.SIZE; i += Trace.SIZE) {
+                    if (this.count % INDEX_INTERVAL == 0) {
+                        if (!indexBuffer.hasRemaining()) {
+                            write(index, indexBuffer);
+                        }
+                        indexBuffer.putLong(records[i+Trace.STEP]).putLong(this.count);
+                    }
+                    if (dataBuffer.remaining() < RECORD) {
+                        write(data, dataBuffer);
+                    }
+                    dataBuffer
+                    .putLong(records[i+Trace.STEP])
+                    .putInt((int) records[i+Trace.STATE])
+                    .putInt((int) records[i+Trace.ALTERNATIVE])
+                    .putLong(records[i+Trace.POSITION]);
+                    this.count += 1;
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        
+        @Override
+        public void flush() {
+            try {
+                write(data, dataBuffer);
+                write(index, indexBuffer);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            } finally {
+                try {
+                    data.close();
+                } finally {
+                    index.close();
+                }
+            }
+        }
+        
+        private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////////////////////////
+    
+    public static class Reader implements Closeable {
+        
+        private final FileChannel data;
+        private final long count;
+        private final long[] indexSteps;
+        private final long[] indexRecords;
+        private final ByteBuffer buffer = ByteBuffer.allocate(RECORD);
+        
+        public Reader(Path file) throws IOException {
+            data = FileChannel.open(file, READ);
+            try {
+                var header = ByteBuffer.allocate(HEADER);
+                read(data, header, 0);
+                if (header.getInt(0) != MAGIC)
+                    throw new IOException("not a trace file: " + file);
+                if (header.getInt(4) != VERSION)
+                    throw new IOException("unsupported trace version " + header.getInt(4) + ": " + file);
+                count = (data.size() - HEADER) / RECORD;
+                
+                try (var index = FileChannel.open(index(file), READ)) {
+                    var entries = (int) Math.min(index.size() / INDEX_ENTRY, (count + INDEX_INTERVAL - 1) / INDEX_INTERVAL);
+                    var bytes = ByteBuffer.allocate(entries * INDEX_ENTRY);
+                    read(index, bytes, 0);
+                    indexSteps = new long[entries];
+                    indexRecords = new long[entries];
+                    for (var i = 0; i < entries; i++) {
+                        indexSteps[i] = bytes.getLong(i * INDEX_ENTRY);
+                        indexRecords[i] = bytes.getLong(i * INDEX_ENTRY + 8);
+                    }
+                }
+            } catch (IOException | RuntimeException ex) {
+                data.close();
+                throw ex;
+            }
+        }
+        
+        public long count() {
+            return count;
+        }
+        
+        /** Returns the index of the first record with a step not lower than {@code step}, or {@link #count()} if there is none. */
+        public long seek(long step) throws IOException {
+            var low = 0L;
+            var high = count;
+            var i = Arrays.binarySearch(indexSteps, step);
+            if (i >= 0) 
+                return indexRecords[i];
+            i = -i - 1;
+            if (i > 0) {
+                low = indexRecords[i-1];
+            }
+            if (i < indexRecords.length) {
+                high = indexRecords[i];
+            }
+            while (low < high) {
+                var mid = (low + high) >>> 1;
+                if (step(mid) < step) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+        
+        public void read(long index, long[] record) throws IOException {
+            if (index < 0 || index >= count)
+                throw new IllegalArgumentException("invalid record index: " + index);
+            read(data, buffer, HEADER + index * RECORD);
+            record[Trace.STEP] = buffer.getLong(0);
+            record[Trace.STATE] = buffer.getInt(8);
+            record[Trace.ALTERNATIVE] = buffer.getInt(12);
+            record[Trace.POSITION] = buffer.getLong(16);
+        }
+        
+        private long step(long index) throws IOException {
+            read(data, buffer, HEADER + index * RECORD);
+            return buffer.getLong(0);
+        }
+        
+        @Override
+        public void close() throws IOException {
+            data.close();
+        }
+        
+        private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0)
+                    throw new IOException("unexpected end of trace file");
+            }
+            buffer.flip();
+        }
+    }
+}
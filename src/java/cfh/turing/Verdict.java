@@ -0,0 +1,38 @@
+package cfh.turing;
+
+import static java.util.Objects.*;
+
+/**
+ * Outcome of a {@link Decider}: the run never halts. The steps and shift describe the repeating 
+ * pattern found, the evidence is a human readable description of it.
+ */
+public class Verdict {
+    
+    public enum Kind {
+        CYCLE,
+        TRANSLATED_CYCLE,
+        BOUNCER;
+    }
+    
+    public final Kind kind;
+    /** {@code false} if the pattern was only observed, not proven to repeat forever. */
+    public final boolean proven;
+    public final long since;
+    public final long period;
+    public final long shift;
+    public final String evidence;
+    
+    Verdict(Kind kind, boolean proven, long since, long period, long shift, String evidence) {
+        this.kind = requireNonNull(kind);
+        this.proven = proven;
+        this.since = since;
+        this.period = period;
+        this.shift = shift;
+        this.evidence = requireNonNull(evidence);
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%s non-halting, %s: %s", proven ? "proven" : "probably", kind, evidence);
+    }
+}